@@ -0,0 +1,67 @@
+package Benchmark;
+
+import Map.*;
+import Routing.*;
+import Simulation.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Throughput of RouteManager.computeRoutes as the number of worker threads grows, with every worker sharing one
+ * CityMap and EnvironmentSimulator. Each batch is also checked against answering the pairs one at a time.
+ * Usage: java Benchmark.BatchBenchmark [grid side] [pairs]
+ */
+public class BatchBenchmark {
+    private static final long MAP_SEED = 445;
+    private static final long SIM_SEED = 5;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int pairCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        CityMap map = MapGenerator.generate(MapGenerator.Layout.GRID, side * side, MAP_SEED);
+        EnvironmentSimulator sim = new EnvironmentSimulator(map, SIM_SEED);
+        RouteManager manager = new RouteManager(map, sim);
+
+        List<OdPair> pairs = new ArrayList<>();
+        for (Intersection[] pair : HeapBenchmark.randomPairs(map, pairCount, MAP_SEED)) {
+            pairs.add(new OdPair(pair[0], pair[1]));
+        }
+        Route[][] expected = new Route[pairs.size()][];
+        long serialStart = System.nanoTime();
+        for (int i = 0; i < pairs.size(); i++) {
+            expected[i] = manager.getBestRoutes(pairs.get(i).getStart(), pairs.get(i).getEnd(), 0.05, 5);
+        }
+        System.out.printf("grid %dx%d, %d pairs, one at a time: %.0f queries/s%n", side, side, pairs.size(),
+                pairs.size() / ((System.nanoTime() - serialStart) / 1e9));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double rate = run(manager, pairs, pool, expected);
+            baseline = threads == 1 ? rate : baseline;
+            System.out.printf("fork-join, %d threads: %.0f queries/s, %.2fx of 1 thread%n", threads, rate, rate / baseline);
+            pool.shutdown();
+        }
+        try (ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.printf("virtual threads: %.0f queries/s%n", run(manager, pairs, virtual, expected));
+        }
+    }
+
+    private static double run(RouteManager theManager, List<OdPair> thePairs, Executor theExecutor, Route[][] theExpected) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            theManager.computeRoutes(thePairs, 0.05, 5, theExecutor);
+        }
+        long start = System.nanoTime();
+        Route[][] results = theManager.computeRoutes(thePairs, 0.05, 5, theExecutor);
+        double rate = thePairs.size() / ((System.nanoTime() - start) / 1e9);
+        for (int i = 0; i < results.length; i++) {
+            if (!Arrays.deepToString(results[i]).equals(Arrays.deepToString(theExpected[i]))) {
+                throw new IllegalStateException("batch result differs for " + thePairs.get(i));
+            }
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,136 @@
+package Benchmark;
+
+import Map.*;
+import Routing.*;
+
+import java.util.*;
+
+/**
+ * Compares Router.computeRoute, which runs on an indexed 4-ary heap with decrease-key, against the previous
+ * PriorityQueue<ComparableIntersection> search on square grid maps.
+ * Usage: java Benchmark.HeapBenchmark [grid sides...]
+ */
+public class HeapBenchmark {
+    private static final int QUERIES = 50;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final long SEED = 445;
+
+    public static void main(String[] args) {
+        int[] sides = args.length == 0 ? new int[] {100, 200, 400} : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        for (int side : sides) {
+            CityMap map = MapGenerator.generate(MapGenerator.Layout.GRID, side * side, SEED);
+            Router router = new Router(map);
+            LegacyRouter legacy = new LegacyRouter();
+            Intersection[][] pairs = randomPairs(map, QUERIES, SEED);
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                runRouter(router, pairs);
+                runLegacy(legacy, pairs);
+            }
+            long routerNanos = runRouter(router, pairs);
+            long legacyNanos = runLegacy(legacy, pairs);
+            System.out.printf("grid %dx%d (%d intersections): indexed heap %.3f ms/query, PriorityQueue %.3f ms/query, speedup %.1fx%n",
+                    side, side, side * side, routerNanos / 1e6 / QUERIES, legacyNanos / 1e6 / QUERIES,
+                    (double) legacyNanos / routerNanos);
+        }
+    }
+
+    static Intersection[][] randomPairs(CityMap theMap, int theCount, long theSeed) {
+        Random rand = new Random(theSeed);
+        Intersection[] all = theMap.getAllIntersections();
+        Intersection[][] result = new Intersection[theCount][];
+        for (int i = 0; i < theCount; i++) {
+            result[i] = new Intersection[] {all[rand.nextInt(all.length)], all[rand.nextInt(all.length)]};
+        }
+        return result;
+    }
+
+    private static long runRouter(Router theRouter, Intersection[][] thePairs) {
+        long start = System.nanoTime();
+        for (Intersection[] pair : thePairs) {
+            theRouter.computeRoute(pair[0], pair[1]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runLegacy(LegacyRouter theRouter, Intersection[][] thePairs) {
+        long start = System.nanoTime();
+        for (Intersection[] pair : thePairs) {
+            theRouter.computeRoute(pair[0], pair[1]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The object based Dijkstra Router used before the CompactGraph and IndexedHeap, kept as the baseline.
+     */
+    private static class LegacyRouter {
+        private static final double DOUBLE_EPSILON = 0.0005;
+
+        List<Intersection> computeRoute(Intersection theStart, Intersection theEnd) {
+            PriorityQueue<ComparableIntersection> pq = new PriorityQueue<>();
+            HashMap<Intersection, ComparableIntersection> seenNode = new HashMap<>();
+            HashSet<ComparableIntersection> closedNode = new HashSet<>();
+
+            ComparableIntersection current = new ComparableIntersection(theStart, 0, null);
+            pq.add(current);
+            while (!pq.isEmpty()) {
+                current = pq.poll();
+                if (current.myIntersection.equals(theEnd)) {
+                    ArrayList<Intersection> path = new ArrayList<>();
+                    for (ComparableIntersection it = current; it != null; it = it.myPrevNode) {
+                        path.add(it.myIntersection);
+                    }
+                    Collections.reverse(path);
+                    return path;
+                }
+                for (Road r : current.myIntersection.getRoadList()) {
+                    Intersection nonOriginNode = r.getSource().equals(current.myIntersection) ? r.getDestination() : r.getSource();
+                    double pathTotal = current.myPathWeight + r.getDefaultTime();
+                    ComparableIntersection seen = seenNode.get(nonOriginNode);
+                    if (seen != null) {
+                        if (closedNode.contains(seen)) {
+                            continue;
+                        }
+                        if (compareDouble(pathTotal, seen.myPathWeight) == -1) {
+                            pq.remove(seen); // the linear scan the indexed heap replaces
+                            seen.myPathWeight = pathTotal;
+                            seen.myPrevNode = current;
+                            pq.add(seen);
+                        }
+                        continue;
+                    }
+                    ComparableIntersection newNode = new ComparableIntersection(nonOriginNode, pathTotal, current);
+                    seenNode.put(nonOriginNode, newNode);
+                    pq.add(newNode);
+                }
+                closedNode.add(current);
+            }
+            return null;
+        }
+
+        private static int compareDouble(double num1, double num2) {
+            if (Math.abs(num1 - num2) < DOUBLE_EPSILON) {
+                return 0;
+            }
+            return num1 > num2 ? 1 : -1;
+        }
+
+        private static class ComparableIntersection implements Comparable<ComparableIntersection> {
+            private final Intersection myIntersection;
+            private double myPathWeight;
+            private ComparableIntersection myPrevNode;
+
+            ComparableIntersection(Intersection theIntersection, double thePathWeight, ComparableIntersection thePrevNode) {
+                this.myIntersection = theIntersection;
+                this.myPathWeight = thePathWeight;
+                this.myPrevNode = thePrevNode;
+            }
+
+            @Override
+            public int compareTo(ComparableIntersection o) {
+                return compareDouble(myPathWeight, o.myPathWeight);
+            }
+        }
+    }
+}
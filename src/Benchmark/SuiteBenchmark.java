@@ -0,0 +1,258 @@
+package Benchmark;
+
+import Map.*;
+import Routing.*;
+import Simulation.*;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Repeatable timings of the main entry points on generated maps of several sizes: parsing a map, building a
+ * simulation, both Router.computeRoute variants, RouteManager.getBestRoutes, SafetyChecker.routeSafety and
+ * Route.toDirections. Every benchmark is warmed up first, then measured over a few timed iterations, and reports
+ * the time and bytes allocated per operation along with the collections that ran meanwhile.
+ *
+ * Results are written as CSV so a later run can be compared against them, the change per benchmark is printed when
+ * a baseline is given.
+ * Maps come from MapGenerator, a grid by default, and each size is a side: the generator is asked for side squared
+ * intersections. A grid has exactly that many, ring and irregular maps only roughly, within a few percent, so the
+ * intersections column has the actual count.
+ * Usage: java Benchmark.SuiteBenchmark [-l grid|ring|irregular] [-o results.csv] [-b baseline.csv] [sides...]
+ */
+public class SuiteBenchmark {
+    private static final long MAP_SEED = 445;
+    private static final long SIM_SEED = 5;
+    private static final int PAIRS = 200;
+    private static final double THRESHOLD = 0.6;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000; // each iteration runs operations for at least this long
+    private static final String CSV_HEADER = "benchmark,layout,side,intersections,ns_per_op,ns_per_op_min,ns_per_op_max,"
+            + "bytes_per_op,gc_count,gc_ms,ops";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static long mySink; // results are folded in here so the JIT can't drop the work
+
+    // one operation of a benchmark, theIndex counts the operations so each one can pick different input
+    private interface Operation {
+        long run(int theIndex);
+    }
+
+    private static class Result {
+        private final String myName;
+        private final String myLayout;
+        private final int mySide;
+        private final int myIntersections;
+        private final double myNanosPerOp;
+        private final double myMinNanosPerOp;
+        private final double myMaxNanosPerOp;
+        private final double myBytesPerOp;
+        private final long myGcCount;
+        private final long myGcMillis;
+        private final long myOps;
+
+        Result(String theName, String theLayout, int theSide, int theIntersections, double theNanosPerOp, double theMinNanosPerOp,
+               double theMaxNanosPerOp, double theBytesPerOp, long theGcCount, long theGcMillis, long theOps) {
+            myName = theName;
+            myLayout = theLayout;
+            mySide = theSide;
+            myIntersections = theIntersections;
+            myNanosPerOp = theNanosPerOp;
+            myMinNanosPerOp = theMinNanosPerOp;
+            myMaxNanosPerOp = theMaxNanosPerOp;
+            myBytesPerOp = theBytesPerOp;
+            myGcCount = theGcCount;
+            myGcMillis = theGcMillis;
+            myOps = theOps;
+        }
+
+        String key() {
+            return myName + "," + myLayout + "," + mySide;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%d,%d,%d", myName, myLayout, mySide,
+                    myIntersections,
+                    myNanosPerOp, myMinNanosPerOp, myMaxNanosPerOp, myBytesPerOp, myGcCount, myGcMillis, myOps);
+        }
+
+        static Result fromCsv(String theLine) {
+            String[] f = theLine.split(",");
+            return new Result(f[0], f[1], Integer.parseInt(f[2]), Integer.parseInt(f[3]), Double.parseDouble(f[4]),
+                    Double.parseDouble(f[5]), Double.parseDouble(f[6]), Double.parseDouble(f[7]),
+                    Long.parseLong(f[8]), Long.parseLong(f[9]), Long.parseLong(f[10]));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = null;
+        Path baseline = null;
+        MapGenerator.Layout layout = MapGenerator.Layout.GRID;
+        List<Integer> sides = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o" -> output = Path.of(args[++i]);
+                case "-b" -> baseline = Path.of(args[++i]);
+                case "-l" -> layout = MapGenerator.Layout.valueOf(args[++i].toUpperCase());
+                default -> sides.add(Integer.parseInt(args[i]));
+            }
+        }
+        if (sides.isEmpty()) {
+            sides.addAll(List.of(50, 100, 200));
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        List<Result> results = new ArrayList<>();
+        for (int side : sides) {
+            results.addAll(runSize(layout, side));
+        }
+        Map<String, Result> previous = baseline == null ? Map.of() : readBaseline(baseline);
+        System.out.printf("%-28s %-10s %6s %14s %14s %10s%n", "benchmark", "layout", "side", "ns/op", "bytes/op",
+                "vs base");
+        for (Result result : results) {
+            Result before = previous.get(result.key());
+            String change = before == null ? ""
+                    : String.format(Locale.ROOT, "%+.1f%%", 100 * (result.myNanosPerOp / before.myNanosPerOp - 1));
+            System.out.printf(Locale.ROOT, "%-28s %-10s %6d %14.1f %14.1f %10s%n", result.myName, result.myLayout,
+                    result.mySide, result.myNanosPerOp, result.myBytesPerOp, change);
+        }
+        if (output != null) {
+            List<String> lines = new ArrayList<>();
+            lines.add(CSV_HEADER);
+            for (Result result : results) {
+                lines.add(result.toCsv());
+            }
+            Files.write(output, lines);
+            System.out.println("results written to " + output);
+        }
+    }
+
+    private static List<Result> runSize(MapGenerator.Layout theLayout, int theSide) {
+        String layout = theLayout.name().toLowerCase();
+        String mapText = MapGenerator.generateText(theLayout, theSide * theSide, MAP_SEED);
+        CityMap map = new CityMap(mapText);
+        int n = map.getAllIntersections().length;
+        EnvironmentSimulator sim = new EnvironmentSimulator(map, SIM_SEED);
+        Router router = new Router(map);
+        RouteManager manager = new RouteManager(map, sim, 0, 0); // no cache, every query is searched
+        Intersection[][] pairs = distinctPairs(map);
+        Route[] routes = new Route[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            routes[i] = router.computeRoute(pairs[i][0], pairs[i][1]);
+        }
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure("CityMap.parse", layout, theSide, n, i -> new CityMap(mapText).getAllIntersections().length));
+        results.add(measure("EnvironmentSimulator.new", layout, theSide, n,
+                i -> new EnvironmentSimulator(map, SIM_SEED + i).getVersion()));
+        results.add(measure("Router.computeRoute", layout, theSide, n,
+                i -> pathLength(router.computeRoute(pairs[i % pairs.length][0], pairs[i % pairs.length][1]))));
+        results.add(measure("Router.computeRoute.sim", layout, theSide, n,
+                i -> pathLength(router.computeRoute(pairs[i % pairs.length][0], pairs[i % pairs.length][1], THRESHOLD, sim))));
+        results.add(measure("RouteManager.getBestRoutes", layout, theSide, n,
+                i -> routeCount(manager.getBestRoutes(pairs[i % pairs.length][0], pairs[i % pairs.length][1], 0.05, 5))));
+        results.add(measure("SafetyChecker.routeSafety", layout, theSide, n,
+                i -> Double.doubleToLongBits(SafetyChecker.routeSafety(routes[i % routes.length], sim))));
+        results.add(measure("Route.toDirections", layout, theSide, n, i -> routes[i % routes.length].toDirections().length()));
+        return results;
+    }
+
+    private static Result measure(String theName, String theLayout, int theSide, int theIntersections,
+                                  Operation theOperation) {
+        int index = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            do {
+                mySink += theOperation.run(index++);
+            } while (System.nanoTime() - start < ITERATION_NANOS);
+        }
+        long ops = 0;
+        long nanos = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = 0;
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long bytesBefore = allocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long iterationOps = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                mySink += theOperation.run(index++);
+                iterationOps++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ITERATION_NANOS);
+            ops += iterationOps;
+            nanos += elapsed;
+            min = Math.min(min, (double) elapsed / iterationOps);
+            max = Math.max(max, (double) elapsed / iterationOps);
+        }
+        double bytes = allocatedBytes() - bytesBefore;
+        return new Result(theName, theLayout, theSide, theIntersections, (double) nanos / ops, min, max, bytes / ops,
+                gcCount() - gcCountBefore, gcMillis() - gcMillisBefore, ops);
+    }
+
+    // bytes allocated so far by every live thread, so work forked to the common pool is counted too
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            total += Math.max(bytes, 0); // -1 for threads that ended in between
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(bean.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(bean.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    // routeSafety and toDirections need at least one road, so the start and end always differ
+    private static Intersection[][] distinctPairs(CityMap theMap) {
+        List<Intersection[]> result = new ArrayList<>();
+        for (Intersection[] pair : HeapBenchmark.randomPairs(theMap, PAIRS, MAP_SEED)) {
+            if (!pair[0].equals(pair[1])) {
+                result.add(pair);
+            }
+        }
+        return result.toArray(new Intersection[0][]);
+    }
+
+    private static long pathLength(Route theRoute) {
+        return theRoute == null ? 0 : theRoute.getRoute().length;
+    }
+
+    private static long routeCount(Route[] theRoutes) {
+        return theRoutes == null ? 0 : theRoutes.length;
+    }
+
+    // earlier results by "benchmark,layout,side", see Result.key
+    private static Map<String, Result> readBaseline(Path thePath) throws IOException {
+        Map<String, Result> result = new HashMap<>();
+        List<String> lines = Files.readAllLines(thePath);
+        if (lines.isEmpty() || !lines.get(0).equals(CSV_HEADER)) {
+            throw new IOException(thePath + " isn't a SuiteBenchmark result file");
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            Result previous = Result.fromCsv(line);
+            result.put(previous.key(), previous);
+        }
+        return result;
+    }
+}
@@ -3,7 +3,6 @@ import Routing.*;
 import Simulation.*;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 
@@ -11,7 +10,7 @@ public class Main {
     private static String fileName = "src/simMap.txt";
 
     public static void main(String[] args) throws IOException {
-        CityMap newCM = new CityMap(Files.readString(Path.of(fileName)));
+        CityMap newCM = MapReader.read(Path.of(fileName));
         EnvironmentSimulator em = new EnvironmentSimulator(newCM, 300L);
         Model car = new Model(newCM, em);
         int startID = 1;
@@ -1,10 +1,14 @@
 package Map;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class CityMap {
     private final ArrayList<Intersection> myIntersections = new ArrayList<>();
     private final ArrayList<Road> myRoads = new ArrayList<>();
+    private volatile CompactGraph myCompactGraph;
 
     // default constructor for empty map
     public CityMap() {
@@ -19,7 +23,7 @@ public class CityMap {
             if (myInputLines[counter].equals("I")){
                 int isLocation = Integer.parseInt(myInputLines[counter+1]);
                 int ID = Integer.parseInt(myInputLines[counter+2]);
-                addIntersection(isLocation, ID);
+                helpAddIntersection(isLocation, ID);
                 counter += 2;
             }
             if (myInputLines[counter].equals("R")){
@@ -39,11 +43,30 @@ public class CityMap {
                         break;
                     default: theDirection = CardinalDirection.NORTH;
                 }
-                addRoad(inter1, inter2, dist, speed, theDirection);
+                helpAddRoad(inter1, inter2, dist, speed, theDirection);
                 counter += 5;
             }
             counter++;
         }
+        helpPlaceIntersections();
+    }
+
+    /**
+     * Loads a map written by writeBinary. The file is memory mapped, so no text is tokenized and the stored
+     * positions and adjacency are used as they are.
+     * @throws IOException if the file can't be read or isn't a binary map of a supported version
+     */
+    public static CityMap readBinary(Path thePath) throws IOException {
+        return MapFile.read(thePath);
+    }
+
+    // writes this map in the binary format, with its adjacency so readers don't need to rebuild it
+    public void writeBinary(Path thePath) throws IOException {
+        MapFile.write(this, thePath, true);
+    }
+
+    public void writeBinary(Path thePath, boolean includeAdjacency) throws IOException {
+        MapFile.write(this, thePath, includeAdjacency);
     }
 
     public static Road getRoad(Intersection intersection1, Intersection intersection2) {
@@ -66,6 +89,25 @@ public class CityMap {
         return myRoads.toArray(new Road[0]);
     }
 
+    /**
+     * Frozen primitive-array view of this map for the routing hot path. It is built on first use, after which
+     * the map is expected to stay unchanged.
+     * @return the compressed sparse row graph of this map
+     */
+    public CompactGraph getCompactGraph() {
+        CompactGraph result = myCompactGraph;
+        if (result == null) {
+            synchronized (this) {
+                result = myCompactGraph;
+                if (result == null) {
+                    result = new CompactGraph(this);
+                    myCompactGraph = result;
+                }
+            }
+        }
+        return result;
+    }
+
     public Intersection getIntersection(int theIntersectionID) {
         if (theIntersectionID <= myIntersections.size()) {
             return myIntersections.get(theIntersectionID-1);
@@ -83,12 +125,75 @@ public class CityMap {
         return sb.toString();
     }
 
-    private void addIntersection(int isLocation1, int intersectionID) {
+    // lays the intersections out on a plane by walking the roads breadth first from the lowest ID of every connected
+    // area, moving each road's length along its direction. if the roads disagree, the first road to reach wins
+    void placeIntersections() {
+        helpPlaceIntersections();
+    }
+
+    // the package-private entry points for the loaders go through these private helpers, so the constructor never
+    // calls a method a subclass could override
+    private void helpPlaceIntersections() {
+        int n = myIntersections.size();
+        boolean[] placed = new boolean[n];
+        int[] queue = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (placed[root]) {
+                continue;
+            }
+            placed[root] = true;
+            myIntersections.get(root).setPosition(0, 0);
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            while (head < tail) {
+                Intersection current = myIntersections.get(queue[head++]);
+                for (Road r : current.getRoadList()) {
+                    Intersection other = r.getSource() == current ? r.getDestination() : r.getSource();
+                    int otherIndex = other.getID() - 1;
+                    if (placed[otherIndex]) {
+                        continue;
+                    }
+                    double x = current.getX();
+                    double y = current.getY();
+                    switch (r.getDirection(current)) {
+                        case NORTH -> y += r.getLength();
+                        case SOUTH -> y -= r.getLength();
+                        case EAST -> x += r.getLength();
+                        case WEST -> x -= r.getLength();
+                    }
+                    other.setPosition(x, y);
+                    placed[otherIndex] = true;
+                    queue[tail++] = otherIndex;
+                }
+            }
+        }
+    }
+
+    // only used by MapFile, which has its adjacency ready before anything asked for it
+    void setCompactGraph(CompactGraph theGraph) {
+        myCompactGraph = theGraph;
+    }
+
+    void addIntersection(int isLocation1, int intersectionID) {
+        helpAddIntersection(isLocation1, intersectionID);
+    }
+
+    private void helpAddIntersection(int isLocation1, int intersectionID) {
         myIntersections.add(new Intersection(isLocation1 == 1, intersectionID));
     }
 
-    private void addRoad(int intersection1, int intersection2, double theDistance, double theSpeedLimit, CardinalDirection theDirection){
-        Road newRoad = myIntersections.get(intersection1-1).connectIntersection(myIntersections.get(intersection2-1), theDistance, theSpeedLimit, theDirection);
+    // appends roads that are already connected to their intersections, in road id order
+    void addConnectedRoads(Road[] theRoads) {
+        myRoads.addAll(Arrays.asList(theRoads));
+    }
+
+    void addRoad(int intersection1, int intersection2, double theDistance, double theSpeedLimit, CardinalDirection theDirection){
+        helpAddRoad(intersection1, intersection2, theDistance, theSpeedLimit, theDirection);
+    }
+
+    private void helpAddRoad(int intersection1, int intersection2, double theDistance, double theSpeedLimit, CardinalDirection theDirection){
+        Road newRoad = myIntersections.get(intersection1-1).connectIntersection(myRoads.size(), myIntersections.get(intersection2-1), theDistance, theSpeedLimit, theDirection);
         myRoads.add(newRoad);
     }
 
@@ -0,0 +1,215 @@
+package Map;
+
+/**
+ * Compressed sparse row (CSR) view of a CityMap. Intersections are indexed by node = ID - 1 and roads by their
+ * dense road id, and every road shows up twice in the adjacency arrays, once from each end. The adjacency of a node
+ * keeps the same order as Intersection.getRoadList() so searches on this graph visit neighbors in the same order.
+ */
+public final class CompactGraph {
+    private static final CardinalDirection[] DIRECTIONS = CardinalDirection.values();
+
+    // adjacency, edges of node n are in [myOffsets[n], myOffsets[n+1])
+    private final int[] myOffsets;
+    private final int[] myTargets;
+    private final int[] myEdgeRoads;
+    private final byte[] myEdgeDirections; // direction of travel when leaving the node through this edge
+
+    // per road data
+    private final int[] myRoadSources;
+    private final int[] myRoadDestinations;
+    private final double[] myLengths;
+    private final double[] mySpeedLimits;
+    private final double[] myDefaultTimes;
+    private final byte[] myRoadDirections;
+
+    // per intersection data
+    private final boolean[] myLocations;
+    private final double[] myX;
+    private final double[] myY;
+
+    // the least default time a road takes per meter of straight-line distance between its ends
+    private final double myTimePerMeterBound;
+
+    CompactGraph(CityMap theMap) {
+        this(theMap, null, null, null, null);
+    }
+
+    // adopts a ready made adjacency, as stored in a binary map file, when theOffsets isn't null
+    CompactGraph(CityMap theMap, int[] theOffsets, int[] theTargets, int[] theEdgeRoads, byte[] theEdgeDirections) {
+        Intersection[] intersections = theMap.getAllIntersections();
+        Road[] roads = theMap.getAllRoads();
+        int nodeCount = intersections.length;
+        int roadCount = roads.length;
+
+        myLocations = new boolean[nodeCount];
+        myX = new double[nodeCount];
+        myY = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            myLocations[i] = intersections[i].isLocation();
+            myX[i] = intersections[i].getX();
+            myY[i] = intersections[i].getY();
+        }
+
+        myRoadSources = new int[roadCount];
+        myRoadDestinations = new int[roadCount];
+        myLengths = new double[roadCount];
+        mySpeedLimits = new double[roadCount];
+        myDefaultTimes = new double[roadCount];
+        myRoadDirections = new byte[roadCount];
+        int[] offsets = new int[nodeCount + 1];
+        for (int r = 0; r < roadCount; r++) {
+            Road road = roads[r];
+            myRoadSources[r] = road.getSource().getID() - 1;
+            myRoadDestinations[r] = road.getDestination().getID() - 1;
+            myLengths[r] = road.getLength();
+            mySpeedLimits[r] = road.getSpeedLimit();
+            myDefaultTimes[r] = road.getDefaultTime();
+            myRoadDirections[r] = (byte) road.getDirection().ordinal();
+            offsets[myRoadSources[r] + 1]++; // count the degree of both ends
+            offsets[myRoadDestinations[r] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        double bound = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < roadCount; r++) {
+            double distance = distance(myRoadSources[r], myRoadDestinations[r]);
+            if (distance > 0) {
+                bound = Math.min(bound, myDefaultTimes[r] / distance);
+            }
+        }
+        myTimePerMeterBound = bound == Double.POSITIVE_INFINITY ? 0 : bound;
+
+        if (theOffsets != null) {
+            myOffsets = theOffsets;
+            myTargets = theTargets;
+            myEdgeRoads = theEdgeRoads;
+            myEdgeDirections = theEdgeDirections;
+            return;
+        }
+
+        // fill in road order, which is the order the intersections received their roads in
+        myOffsets = offsets;
+        myTargets = new int[myOffsets[nodeCount]];
+        myEdgeRoads = new int[myOffsets[nodeCount]];
+        myEdgeDirections = new byte[myOffsets[nodeCount]];
+        int[] fill = new int[nodeCount];
+        System.arraycopy(myOffsets, 0, fill, 0, nodeCount);
+        for (int r = 0; r < roadCount; r++) {
+            int source = myRoadSources[r];
+            int dest = myRoadDestinations[r];
+            int forward = fill[source]++;
+            myTargets[forward] = dest;
+            myEdgeRoads[forward] = r;
+            myEdgeDirections[forward] = myRoadDirections[r];
+            int backward = fill[dest]++;
+            myTargets[backward] = source;
+            myEdgeRoads[backward] = r;
+            myEdgeDirections[backward] = (byte) CardinalDirection.swapDirection(DIRECTIONS[myRoadDirections[r]]).ordinal();
+        }
+    }
+
+    public int getIntersectionCount() {
+        return myLocations.length;
+    }
+
+    public int getRoadCount() {
+        return myLengths.length;
+    }
+
+    public int getEdgeCount() {
+        return myTargets.length;
+    } // every road counts twice, once per direction
+
+    // node index of an intersection ID and back
+    public static int toNode(int theIntersectionID) {
+        return theIntersectionID - 1;
+    }
+
+    public static int toIntersectionID(int theNode) {
+        return theNode + 1;
+    }
+
+    public boolean isLocation(int theNode) {
+        return myLocations[theNode];
+    }
+
+    public double getX(int theNode) {
+        return myX[theNode];
+    }
+
+    public double getY(int theNode) {
+        return myY[theNode];
+    }
+
+    // straight-line distance in meters between the positions of two intersections
+    public double distance(int theNode, int theOther) {
+        double dx = myX[theNode] - myX[theOther];
+        double dy = myY[theNode] - myY[theOther];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Lower bound on default travel minutes per meter of straight-line distance, taken over every road. Because it
+     * holds for each road on its own, distance(a, b) * bound never overestimates the default time between a and b,
+     * and the condition multiplier in SafetyChecker.roadTime is never below 1, so it's a bound there too.
+     */
+    public double getTimePerMeterBound() {
+        return myTimePerMeterBound;
+    }
+
+    public int getEdgeStart(int theNode) {
+        return myOffsets[theNode];
+    }
+
+    public int getEdgeEnd(int theNode) {
+        return myOffsets[theNode + 1];
+    } // exclusive
+
+    public int getTarget(int theEdge) {
+        return myTargets[theEdge];
+    }
+
+    public int getRoad(int theEdge) {
+        return myEdgeRoads[theEdge];
+    }
+
+    public CardinalDirection getDirection(int theEdge) {
+        return DIRECTIONS[myEdgeDirections[theEdge]];
+    }
+
+    public int getSource(int theRoad) {
+        return myRoadSources[theRoad];
+    }
+
+    public int getDestination(int theRoad) {
+        return myRoadDestinations[theRoad];
+    }
+
+    public double getLength(int theRoad) {
+        return myLengths[theRoad];
+    } // length in meters
+
+    public double getSpeedLimit(int theRoad) {
+        return mySpeedLimits[theRoad];
+    } // speed limit in km/h
+
+    public double getDefaultTime(int theRoad) {
+        return myDefaultTimes[theRoad];
+    } // same as Road.getDefaultTime()
+
+    public CardinalDirection getRoadDirection(int theRoad) {
+        return DIRECTIONS[myRoadDirections[theRoad]];
+    }
+
+    // returns the edge from theFrom to theTo, or -1 if they aren't connected
+    public int findEdge(int theFrom, int theTo) {
+        for (int e = myOffsets[theFrom]; e < myOffsets[theFrom + 1]; e++) {
+            if (myTargets[e] == theTo) {
+                return e;
+            }
+        }
+        return -1;
+    }
+}
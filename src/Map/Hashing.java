@@ -0,0 +1,12 @@
+package Map;
+
+// the 64 bit mixing step shared by MapGenerator's coordinate hashes and TravelMatrix's fingerprints
+public final class Hashing {
+    private Hashing() {}
+
+    // folds theValue into theHash, multiplying by the golden ratio so every input bit spreads over the result
+    public static long mix(long theHash, long theValue) {
+        long h = (theHash ^ theValue) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
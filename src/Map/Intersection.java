@@ -6,6 +6,8 @@ public class Intersection {
     private final int myId;
     private final ArrayList<Road> myRoads = new ArrayList<>(4); // we assume that intersections are connected to at most 4 roads
     private final boolean myAccessibility;
+    private double myX; // position in meters east of the first intersection of its connected area
+    private double myY; // position in meters north of it
 
     public Intersection(boolean isLocation1, int theID) {
         this.myId = theID;
@@ -20,18 +22,31 @@ public class Intersection {
         return myAccessibility;
     }
 
+    public double getX() {
+        return myX;
+    }
+
+    public double getY() {
+        return myY;
+    }
+
+    void setPosition(double theX, double theY) {
+        this.myX = theX;
+        this.myY = theY;
+    }
+
     public Road[] getRoadList() {
         return myRoads.toArray(new Road[0]);
     }
 
-    Road connectIntersection(Intersection theOther, double theDistance, double theSpeedLimit, CardinalDirection theDirection) {
-        Road newRoad = new Road(this, theOther, theDistance, theSpeedLimit, theDirection);
+    Road connectIntersection(int theRoadID, Intersection theOther, double theDistance, double theSpeedLimit, CardinalDirection theDirection) {
+        Road newRoad = new Road(theRoadID, this, theOther, theDistance, theSpeedLimit, theDirection);
         theOther.addRoad(newRoad);
         this.addRoad(newRoad);
         return newRoad;
     }
 
-    private void addRoad(Road theRoad) {
+    void addRoad(Road theRoad) {
         myRoads.add(theRoad);
     }
 
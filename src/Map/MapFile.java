@@ -0,0 +1,205 @@
+package Map;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary form of a CityMap, read through a memory mapped buffer so a big map opens without tokenizing any
+ * text. Reading still copies every record into Intersection and Road objects and the adjacency into heap arrays, so
+ * the mapping is only held while the file is read. Everything is little endian:
+ *
+ * header (32 bytes): magic "CMAP", version, flags, intersection count, road count, edge count, 2 reserved ints
+ * intersections (24 bytes each, in ID order): x, y as doubles, flags (bit 0 = location), reserved int
+ * roads (32 bytes each, in road id order): length, speed limit as doubles, source ID, destination ID, direction
+ *                                          ordinal, reserved int
+ * CSR block, only if flag HAS_CSR is set: offsets int[intersections + 1], targets int[edges], roads int[edges],
+ *                                          directions byte[edges]
+ *
+ * Intersection positions are stored, so reading doesn't need to lay the map out again.
+ */
+final class MapFile {
+    static final int MAGIC = 0x50414D43; // "CMAP" read as a little endian int
+    static final int VERSION = 1;
+    static final int HAS_CSR = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int INTERSECTION_BYTES = 24;
+    private static final int ROAD_BYTES = 32;
+    private static final int LOCATION = 1;
+    private static final CardinalDirection[] DIRECTIONS = CardinalDirection.values();
+
+    private MapFile() {
+    }
+
+    static void write(CityMap theMap, Path thePath, boolean includeCSR) throws IOException {
+        Intersection[] intersections = theMap.getAllIntersections();
+        Road[] roads = theMap.getAllRoads();
+        CompactGraph graph = includeCSR ? theMap.getCompactGraph() : null;
+        int edgeCount = includeCSR ? graph.getEdgeCount() : 0;
+
+        long size = HEADER_BYTES + (long) intersections.length * INTERSECTION_BYTES + (long) roads.length * ROAD_BYTES;
+        if (includeCSR) {
+            size += 4L * (intersections.length + 1) + 9L * edgeCount;
+        }
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(includeCSR ? HAS_CSR : 0)
+                    .putInt(intersections.length).putInt(roads.length).putInt(edgeCount).putInt(0).putInt(0);
+            for (Intersection i : intersections) {
+                buffer.putDouble(i.getX()).putDouble(i.getY()).putInt(i.isLocation() ? LOCATION : 0).putInt(0);
+            }
+            for (Road r : roads) {
+                buffer.putDouble(r.getLength()).putDouble(r.getSpeedLimit())
+                        .putInt(r.getSource().getID()).putInt(r.getDestination().getID())
+                        .putInt(r.getDirection().ordinal()).putInt(0);
+            }
+            if (includeCSR) {
+                for (int node = 0; node <= intersections.length; node++) {
+                    buffer.putInt(node < intersections.length ? graph.getEdgeStart(node) : edgeCount);
+                }
+                for (int e = 0; e < edgeCount; e++) {
+                    buffer.putInt(graph.getTarget(e));
+                }
+                for (int e = 0; e < edgeCount; e++) {
+                    buffer.putInt(graph.getRoad(e));
+                }
+                for (int e = 0; e < edgeCount; e++) {
+                    buffer.put((byte) graph.getDirection(e).ordinal());
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    static CityMap read(Path thePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(thePath + " is too short to be a binary map");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer.order(ByteOrder.LITTLE_ENDIAN), thePath);
+        }
+    }
+
+    private static CityMap read(ByteBuffer theBuffer, Path thePath) throws IOException {
+        if (theBuffer.getInt() != MAGIC) {
+            throw new IOException(thePath + " is not a binary map");
+        }
+        int version = theBuffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(thePath + " has binary map version " + version + ", expected " + VERSION);
+        }
+        int flags = theBuffer.getInt();
+        int intersectionCount = theBuffer.getInt();
+        int roadCount = theBuffer.getInt();
+        int edgeCount = theBuffer.getInt();
+        long expected = HEADER_BYTES + (long) intersectionCount * INTERSECTION_BYTES + (long) roadCount * ROAD_BYTES;
+        if ((flags & HAS_CSR) != 0) {
+            expected += 4L * (intersectionCount + 1) + 9L * edgeCount;
+        }
+        if (intersectionCount < 0 || roadCount < 0 || edgeCount < 0 || theBuffer.capacity() < expected) {
+            throw new IOException(thePath + " is truncated, expected " + expected + " bytes");
+        }
+        theBuffer.position(HEADER_BYTES);
+
+        CityMap result = new CityMap();
+        int[] sources = new int[roadCount]; // by road, as nodes, to check the adjacency against
+        int[] destinations = new int[roadCount];
+        int[] directions = new int[roadCount]; // by road, the ordinal it runs in from its source
+        for (int i = 0; i < intersectionCount; i++) {
+            double x = theBuffer.getDouble();
+            double y = theBuffer.getDouble();
+            int intersectionFlags = theBuffer.getInt();
+            theBuffer.getInt();
+            result.addIntersection((intersectionFlags & LOCATION) != 0 ? 1 : 0, i + 1);
+            result.getIntersection(i + 1).setPosition(x, y);
+        }
+        for (int r = 0; r < roadCount; r++) {
+            double length = theBuffer.getDouble();
+            double speed = theBuffer.getDouble();
+            int source = theBuffer.getInt();
+            int destination = theBuffer.getInt();
+            int direction = theBuffer.getInt();
+            theBuffer.getInt();
+            if (source < 1 || source > intersectionCount || destination < 1 || destination > intersectionCount
+                    || direction < 0 || direction >= DIRECTIONS.length) {
+                throw new IOException(thePath + " has a malformed road at index " + r);
+            }
+            result.addRoad(source, destination, length, speed, DIRECTIONS[direction]);
+            sources[r] = source - 1;
+            destinations[r] = destination - 1;
+            directions[r] = direction;
+        }
+
+        if ((flags & HAS_CSR) != 0) {
+            int[] offsets = new int[intersectionCount + 1];
+            int[] targets = new int[edgeCount];
+            int[] edgeRoads = new int[edgeCount];
+            byte[] edgeDirections = new byte[edgeCount];
+            theBuffer.asIntBuffer().get(offsets);
+            theBuffer.position(theBuffer.position() + 4 * offsets.length);
+            theBuffer.asIntBuffer().get(targets);
+            theBuffer.position(theBuffer.position() + 4 * edgeCount);
+            theBuffer.asIntBuffer().get(edgeRoads);
+            theBuffer.position(theBuffer.position() + 4 * edgeCount);
+            theBuffer.get(edgeDirections);
+            if (!isAdjacency(offsets, targets, edgeRoads, edgeDirections, sources, destinations, directions)) {
+                throw new IOException(thePath + " has an adjacency block that doesn't match its roads");
+            }
+            result.setCompactGraph(new CompactGraph(result, offsets, targets, edgeRoads, edgeDirections));
+        }
+        return result;
+    }
+
+    // whether the stored adjacency is well formed and lists every road exactly once from each of its ends, in the
+    // direction it runs from that end, so a corrupt file is turned down here rather than failing deep inside a search
+    private static boolean isAdjacency(int[] theOffsets, int[] theTargets, int[] theEdgeRoads, byte[] theEdgeDirections,
+                                       int[] theSources, int[] theDestinations, int[] theDirections) {
+        int nodeCount = theOffsets.length - 1;
+        int edgeCount = theTargets.length;
+        if (edgeCount != 2 * theSources.length || theOffsets[0] != 0 || theOffsets[nodeCount] != edgeCount) {
+            return false;
+        }
+        boolean[] hasForward = new boolean[theSources.length]; // by road, whether its edge from the source was seen
+        boolean[] hasBackward = new boolean[theSources.length];
+        for (int node = 0; node < nodeCount; node++) {
+            if (theOffsets[node + 1] < theOffsets[node]) {
+                return false;
+            }
+            for (int e = theOffsets[node]; e < theOffsets[node + 1]; e++) {
+                int target = theTargets[e];
+                int road = theEdgeRoads[e];
+                if (target < 0 || target >= nodeCount || road < 0 || road >= theSources.length) {
+                    return false;
+                }
+                // a cardinal direction is never its own opposite, so the direction tells the two edges of a loop apart
+                CardinalDirection forward = DIRECTIONS[theDirections[road]];
+                int direction = theEdgeDirections[e];
+                if (direction == forward.ordinal() && theSources[road] == node && theDestinations[road] == target
+                        && !hasForward[road]) {
+                    hasForward[road] = true;
+                } else if (direction == CardinalDirection.swapDirection(forward).ordinal()
+                        && theDestinations[road] == node && theSources[road] == target && !hasBackward[road]) {
+                    hasBackward[road] = true;
+                } else {
+                    return false;
+                }
+            }
+        }
+        // with two edges per road and none seen twice every road has both, checked anyway in case that changes
+        for (int r = 0; r < theSources.length; r++) {
+            if (!hasForward[r] || !hasBackward[r]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
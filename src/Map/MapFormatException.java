@@ -0,0 +1,25 @@
+package Map;
+
+import java.io.IOException;
+
+// thrown by MapReader for a record it can't parse, with the 1-based line and column the problem was found at
+public class MapFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int myLine;
+    private final int myColumn;
+
+    public MapFormatException(String theMessage, int theLine, int theColumn) {
+        super("line " + theLine + ", column " + theColumn + ": " + theMessage);
+        this.myLine = theLine;
+        this.myColumn = theColumn;
+    }
+
+    public int getLine() {
+        return myLine;
+    }
+
+    public int getColumn() {
+        return myColumn;
+    }
+}
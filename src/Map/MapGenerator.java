@@ -0,0 +1,344 @@
+package Map;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded synthetic cities in the text map format (see Main), from a few hundred intersections up to millions. The
+ * same layout, size and seed always give the same file.
+ *
+ * Every layout is laid out on a lattice of rows and columns with random spacing, and keeps some of the lattice's
+ * segments as roads. Roads only run along rows and columns, so their lengths and directions agree with the positions
+ * CityMap places the intersections at. Lattice points a road only runs straight through aren't written, the road
+ * just gets longer, so the intersections left are the corners, junctions and dead ends.
+ *
+ * The output is streamed row by row: the intersections first, then a second pass over the same rows for the roads,
+ * so only a couple of rows are held at a time.
+ * Usage: java Map.MapGenerator grid|ring|irregular (intersections) (seed) (text file) [binary file]
+ */
+public final class MapGenerator {
+    public static final double DEFAULT_LOCATION_SHARE = 0.1;
+
+    public enum Layout {
+        GRID, // every lattice segment is a road
+        RING, // a downtown grid inside ring roads, with avenues running out to the last ring
+        IRREGULAR // arterial grid with side streets that stop, bend, and leave gaps for parks
+    }
+
+    // irregular cities
+    private static final int ARTERIAL_SPACING = 8; // lattice steps between arterial rows and columns
+    private static final double PARK_SHARE = 0.04; // blocks with no side streets
+    private static final double CUT_SHARE = 0.35; // side streets interrupted once between two arterials
+    private static final double CROSS_STREET_SHARE = 0.55; // side street segments running north
+    private static final double IRREGULAR_NODE_SHARE = 0.8; // roughly the lattice points that end up intersections
+
+    // ring cities, in lattice steps from the center
+    private static final int CORE_RADIUS = 4;
+    private static final int AVENUE_SPACING = 2;
+    private static final int RING_GAP_GROWTH = 6; // rings after which the gap to the next one grows by a step
+
+    // salts so each kind of random choice gets its own stream
+    private static final long PARK = 1;
+    private static final long CUT = 2;
+    private static final long CUT_AT = 3;
+    private static final long CROSS_STREET = 4;
+    private static final long LOCATION = 5;
+
+    private final Layout myLayout;
+    private final long mySeed;
+    private final double myLocationShare;
+    private final int myRows;
+    private final int myColumns;
+    private final int[] myRowGaps; // metres to the next row or column
+    private final int[] myColumnGaps;
+    private final int[] myRowSpeeds;
+    private final int[] myColumnSpeeds;
+
+    // ring cities, by lattice steps from the center
+    private int myCenter;
+    private int myOuterRing;
+    private boolean[] myIsRing;
+    private int[] myFirstRing; // the first ring at or beyond each distance, where avenues that far out start
+
+    private MapGenerator(Layout theLayout, int theIntersections, long theSeed, double theLocationShare) {
+        if (theIntersections < 1) {
+            throw new IllegalArgumentException("a map needs at least one intersection");
+        }
+        if (theLocationShare < 0 || theLocationShare > 1) {
+            throw new IllegalArgumentException("location share " + theLocationShare + " isn't between 0 and 1");
+        }
+        myLayout = theLayout;
+        mySeed = theSeed;
+        myLocationShare = theLocationShare;
+        int side = switch (theLayout) {
+            case GRID -> Math.max(2, (int) Math.round(Math.sqrt(theIntersections)));
+            case RING -> planRings(theIntersections);
+            case IRREGULAR -> {
+                int blocks = (int) Math.ceil(Math.sqrt(theIntersections / IRREGULAR_NODE_SHARE) / ARTERIAL_SPACING);
+                yield Math.max(1, blocks) * ARTERIAL_SPACING + 1; // arterials all around the edge
+            }
+        };
+        myRows = side;
+        myColumns = side;
+        SplittableRandom rand = new SplittableRandom(theSeed);
+        myRowGaps = new int[side];
+        myColumnGaps = new int[side];
+        myRowSpeeds = new int[side];
+        myColumnSpeeds = new int[side];
+        for (int i = 0; i < side; i++) {
+            myRowGaps[i] = gap(rand);
+            myColumnGaps[i] = gap(rand);
+            myRowSpeeds[i] = speed(i, rand);
+            myColumnSpeeds[i] = speed(i, rand);
+        }
+    }
+
+    // writes the map as text to theOutput
+    public static void write(Layout theLayout, int theIntersections, long theSeed, double theLocationShare,
+                             Writer theOutput) throws IOException {
+        new MapGenerator(theLayout, theIntersections, theSeed, theLocationShare).write(theOutput);
+    }
+
+    public static String generateText(Layout theLayout, int theIntersections, long theSeed) {
+        StringWriter result = new StringWriter();
+        try {
+            write(theLayout, theIntersections, theSeed, DEFAULT_LOCATION_SHARE, result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringWriter doesn't throw
+        }
+        return result.toString();
+    }
+
+    public static CityMap generate(Layout theLayout, int theIntersections, long theSeed) {
+        byte[] text = generateText(theLayout, theIntersections, theSeed).getBytes(StandardCharsets.US_ASCII);
+        try {
+            return MapReader.read(new ByteArrayInputStream(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: java Map.MapGenerator grid|ring|irregular (intersections) (seed) (text file) [binary file]");
+            return;
+        }
+        Layout layout = Layout.valueOf(args[0].toUpperCase());
+        int intersections = Integer.parseInt(args[1]);
+        long seed = Long.parseLong(args[2]);
+        Path text = Path.of(args[3]);
+        try (Writer out = Files.newBufferedWriter(text, StandardCharsets.US_ASCII)) {
+            write(layout, intersections, seed, DEFAULT_LOCATION_SHARE, out);
+        }
+        CityMap map = MapReader.read(text);
+        System.out.println(text + ": " + map.getAllIntersections().length + " intersections, "
+                + map.getAllRoads().length + " roads");
+        if (args.length > 4) {
+            map.writeBinary(Path.of(args[4]));
+        }
+    }
+
+    private void write(Writer theOutput) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int id = 0;
+        for (int r = 0; r < myRows; r++) {
+            for (int c = 0; c < myColumns; c++) {
+                if (isIntersection(r, c)) {
+                    id++;
+                    line.setLength(0);
+                    line.append("I ").append(isLocation(id) ? 1 : 0).append(' ').append(id).append('\n');
+                    theOutput.append(line);
+                }
+            }
+        }
+
+        // the intersection a road going east or north left from, and how far it has come since
+        int[] northFrom = new int[myColumns];
+        long[] northLength = new long[myColumns];
+        id = 0;
+        for (int r = 0; r < myRows; r++) {
+            int eastFrom = 0;
+            long eastLength = 0;
+            for (int c = 0; c < myColumns; c++) {
+                boolean east = hasEast(r, c);
+                boolean north = hasNorth(r, c);
+                if (isIntersection(r, c)) {
+                    id++;
+                    if (c > 0 && hasEast(r, c - 1)) {
+                        writeRoad(theOutput, line, eastFrom, id, eastLength, myRowSpeeds[r], 'E');
+                    }
+                    if (r > 0 && hasNorth(r - 1, c)) {
+                        writeRoad(theOutput, line, northFrom[c], id, northLength[c], myColumnSpeeds[c], 'N');
+                    }
+                    eastFrom = east ? id : 0;
+                    eastLength = 0;
+                    northFrom[c] = north ? id : 0;
+                    northLength[c] = 0;
+                }
+                if (east) {
+                    eastLength += myColumnGaps[c];
+                }
+                if (north) {
+                    northLength[c] += myRowGaps[r];
+                }
+            }
+        }
+        theOutput.flush();
+    }
+
+    private static void writeRoad(Writer theOutput, StringBuilder theLine, int theFrom, int theTo, long theLength,
+                                  int theSpeed, char theDirection) throws IOException {
+        theLine.setLength(0);
+        theLine.append("R ").append(theFrom).append(' ').append(theTo).append(' ').append(theLength).append(' ')
+                .append(theSpeed).append(' ').append(theDirection).append('\n');
+        theOutput.append(theLine);
+    }
+
+    // a lattice point with roads that don't all just run straight through it
+    private boolean isIntersection(int theRow, int theColumn) {
+        boolean east = hasEast(theRow, theColumn);
+        boolean west = theColumn > 0 && hasEast(theRow, theColumn - 1);
+        boolean north = hasNorth(theRow, theColumn);
+        boolean south = theRow > 0 && hasNorth(theRow - 1, theColumn);
+        if (east && west) {
+            return north || south;
+        }
+        if (north && south) {
+            return east || west;
+        }
+        return east || west || north || south;
+    }
+
+    // whether the segment from theRow, theColumn to the next column is a road
+    private boolean hasEast(int theRow, int theColumn) {
+        if (theColumn + 1 >= myColumns) {
+            return false;
+        }
+        return switch (myLayout) {
+            case GRID -> true;
+            case RING -> isRingSegment(theRow - myCenter, theColumn - myCenter, theColumn + 1 - myCenter);
+            case IRREGULAR -> {
+                if (theRow % ARTERIAL_SPACING == 0) {
+                    yield true;
+                }
+                int blockColumn = theColumn / ARTERIAL_SPACING;
+                if (isPark(theRow / ARTERIAL_SPACING, blockColumn)) {
+                    yield false;
+                }
+                // at most one cut between two arterial columns, so both halves still reach one
+                yield !(random(CUT, theRow, blockColumn) < CUT_SHARE
+                        && theColumn % ARTERIAL_SPACING == (int) (random(CUT_AT, theRow, blockColumn) * ARTERIAL_SPACING));
+            }
+        };
+    }
+
+    // whether the segment from theRow, theColumn to the next row is a road
+    private boolean hasNorth(int theRow, int theColumn) {
+        if (theRow + 1 >= myRows) {
+            return false;
+        }
+        return switch (myLayout) {
+            case GRID -> true;
+            case RING -> isRingSegment(theColumn - myCenter, theRow - myCenter, theRow + 1 - myCenter);
+            case IRREGULAR -> theColumn % ARTERIAL_SPACING == 0
+                    || (!isPark(theRow / ARTERIAL_SPACING, theColumn / ARTERIAL_SPACING)
+                    && random(CROSS_STREET, theRow, theColumn) < CROSS_STREET_SHARE);
+        };
+    }
+
+    // a segment across theAcross from theFrom to theTo, all in steps from the center, the same way for both axes
+    private boolean isRingSegment(int theAcross, int theFrom, int theTo) {
+        int across = Math.abs(theAcross);
+        int near = Math.min(Math.abs(theFrom), Math.abs(theTo));
+        int far = Math.max(Math.abs(theFrom), Math.abs(theTo));
+        if (across > myOuterRing || far > myOuterRing) {
+            return false;
+        }
+        if (across <= CORE_RADIUS && far <= CORE_RADIUS) {
+            return true; // downtown
+        }
+        if (myIsRing[across] && far <= across) {
+            return true; // a side of the ring
+        }
+        // an avenue, from the first ring it meets out to the last one
+        return across % AVENUE_SPACING == 0 && near >= myFirstRing[across];
+    }
+
+    private boolean isPark(int theBlockRow, int theBlockColumn) {
+        return random(PARK, theBlockRow, theBlockColumn) < PARK_SHARE;
+    }
+
+    private boolean isLocation(int theID) {
+        return random(LOCATION, theID, 0) < myLocationShare;
+    }
+
+    // sets the ring radii so there are about theIntersections, and returns the lattice side
+    private int planRings(int theIntersections) {
+        int[] radii = new int[16];
+        int count = 1;
+        radii[0] = CORE_RADIUS;
+        long estimate = (2L * CORE_RADIUS + 1) * (2L * CORE_RADIUS + 1);
+        while (estimate < theIntersections) {
+            if (count == radii.length) {
+                radii = Arrays.copyOf(radii, count * 2);
+            }
+            radii[count] = radii[count - 1] + 2 + count / RING_GAP_GROWTH;
+            estimate += 8L * radii[count] / AVENUE_SPACING + 4; // where avenues cross the ring, and its corners
+            count++;
+        }
+        myOuterRing = radii[count - 1];
+        myCenter = myOuterRing;
+        myIsRing = new boolean[myOuterRing + 1];
+        myFirstRing = new int[myOuterRing + 1];
+        for (int i = 0; i < count; i++) {
+            myIsRing[radii[i]] = true;
+        }
+        int next = myOuterRing;
+        for (int distance = myOuterRing; distance >= 0; distance--) {
+            if (myIsRing[distance]) {
+                next = distance;
+            }
+            myFirstRing[distance] = Math.max(next, CORE_RADIUS);
+        }
+        return 2 * myOuterRing + 1;
+    }
+
+    // metres between neighbouring rows or columns
+    private int gap(SplittableRandom theRand) {
+        return switch (myLayout) {
+            case GRID -> 100 + theRand.nextInt(400);
+            case RING -> 80 + theRand.nextInt(120);
+            case IRREGULAR -> 40 + theRand.nextInt(260);
+        };
+    }
+
+    // speed limit along row or column theIndex
+    private int speed(int theIndex, SplittableRandom theRand) {
+        return switch (myLayout) {
+            case GRID -> 40 + 10 * theRand.nextInt(5);
+            case RING -> {
+                int distance = Math.abs(theIndex - myCenter);
+                if (distance > CORE_RADIUS && myIsRing[distance]) {
+                    yield 60 + 10 * theRand.nextInt(2);
+                }
+                yield distance <= CORE_RADIUS ? 30 + 5 * theRand.nextInt(3) : 45 + 5 * theRand.nextInt(3);
+            }
+            case IRREGULAR -> theIndex % ARTERIAL_SPACING == 0 ? 50 + 10 * theRand.nextInt(3) : 25 + 5 * theRand.nextInt(3);
+        };
+    }
+
+    // uniform in [0, 1), the same for the same salt, coordinates and seed
+    private double random(long theSalt, long theFirst, long theSecond) {
+        long h = Hashing.mix(Hashing.mix(Hashing.mix(mySeed, theSalt), theFirst), theSecond);
+        h = Hashing.mix(h, h >>> 31);
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,305 @@
+package Map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Streaming loader for the text map format (see Main), reading "I (isLocation) (ID)" and
+ * "R (ID1) (ID2) (Distance) (SpeedLimit) (Direction)" records in one pass over a reusable byte buffer. Unlike
+ * CityMap(String) it never holds the whole file or a token array, numbers are parsed straight from the buffer, and a
+ * malformed record is reported with its line and column.
+ */
+public final class MapReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // 10^k for the doubles that are exact, dividing a mantissa below 2^53 by one of these rounds correctly
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final InputStream myInput;
+    private final byte[] myBuffer;
+    private int myLimit; // bytes of myBuffer holding input
+    private int myPos;
+    private boolean myEnded;
+
+    // where the current token is in myBuffer, and where it is in the input
+    private int myTokenStart;
+    private int myTokenEnd;
+    private int myTokenLine;
+    private int myTokenColumn;
+    private int myLine = 1;
+    private int myColumn = 1;
+
+    private MapReader(InputStream theInput) {
+        this.myInput = theInput;
+        this.myBuffer = new byte[BUFFER_SIZE];
+    }
+
+    // reads the first theLength bytes of theData, which already hold the whole input
+    MapReader(byte[] theData, int theLength) {
+        this.myInput = null;
+        this.myBuffer = theData;
+        this.myLimit = theLength;
+        this.myEnded = true;
+    }
+
+    public static CityMap read(Path thePath) throws IOException {
+        try (InputStream input = Files.newInputStream(thePath)) {
+            return read(input);
+        }
+    }
+
+    // reads a map from theInput up to its end, the stream is left open
+    public static CityMap read(InputStream theInput) throws IOException {
+        CityMap result = new CityMap();
+        new MapReader(theInput).readInto(result, null);
+        result.placeIntersections();
+        return result;
+    }
+
+    /**
+     * Reads a map file with every core of the common pool, see readParallel(Path, ForkJoinPool).
+     */
+    public static CityMap readParallel(Path thePath) throws IOException {
+        return readParallel(thePath, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Splits the file into chunks at line breaks and parses them on thePool, then merges the chunks in file order
+     * and connects the roads to their intersections in parallel. The result is the same map, with the same IDs and
+     * road order, that read(thePath) gives. A record must not span more than one line.
+     */
+    public static CityMap readParallel(Path thePath, ForkJoinPool thePool) throws IOException {
+        return new ParallelMapLoader(thePath, thePool).load();
+    }
+
+    // adds the records straight to theMap, or collects them into theChunk when theMap is null. a chunk can't know the
+    // IDs declared before it, so those are checked when the chunks are merged
+    void readInto(CityMap theMap, ParallelMapLoader.Chunk theChunk) throws IOException {
+        int intersectionCount = 0;
+        while (nextToken()) {
+            int line = myTokenLine;
+            int column = myTokenColumn;
+            if (isToken('I')) {
+                int isLocation = readInt("location flag");
+                if (isLocation != 0 && isLocation != 1) {
+                    throw error("location flag must be 0 or 1");
+                }
+                int id = readInt("intersection ID");
+                if (theChunk != null) {
+                    theChunk.addIntersection(isLocation, id, myTokenLine, myTokenColumn);
+                    continue;
+                }
+                if (id != intersectionCount + 1) {
+                    throw error("expected intersection ID " + (intersectionCount + 1) + " but got " + id);
+                }
+                theMap.addIntersection(isLocation, id);
+                intersectionCount++;
+            } else if (isToken('R')) {
+                int inter1 = theChunk != null ? readInt("intersection ID") : readIntersection(intersectionCount);
+                int inter2 = theChunk != null ? readInt("intersection ID") : readIntersection(intersectionCount);
+                double dist = readDouble("distance");
+                double speed = readDouble("speed limit");
+                CardinalDirection direction = readDirection();
+                if (theChunk != null) {
+                    theChunk.addRoad(inter1, inter2, dist, speed, direction, line, column);
+                } else {
+                    theMap.addRoad(inter1, inter2, dist, speed, direction);
+                }
+            } else {
+                throw error("expected a record starting with I or R but got \"" + tokenString() + "\"");
+            }
+        }
+    }
+
+    private int readIntersection(int theIntersectionCount) throws IOException {
+        int id = readInt("intersection ID");
+        if (id < 1 || id > theIntersectionCount) {
+            throw error("road to intersection " + id + " which hasn't been declared");
+        }
+        return id;
+    }
+
+    // same as CityMap(String), anything but S, W or E is taken as north
+    private CardinalDirection readDirection() throws IOException {
+        expectToken("direction");
+        if (isToken('S')) {
+            return CardinalDirection.SOUTH;
+        } else if (isToken('W')) {
+            return CardinalDirection.WEST;
+        } else if (isToken('E')) {
+            return CardinalDirection.EAST;
+        }
+        return CardinalDirection.NORTH;
+    }
+
+    private int readInt(String theField) throws IOException {
+        expectToken(theField);
+        int i = myTokenStart;
+        boolean negative = myBuffer[i] == '-';
+        if (negative || myBuffer[i] == '+') {
+            i++;
+        }
+        if (i == myTokenEnd) {
+            throw error("expected an integer " + theField + " but got \"" + tokenString() + "\"");
+        }
+        long value = 0;
+        for (; i < myTokenEnd; i++) {
+            int digit = myBuffer[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                throw error("expected an integer " + theField + " but got \"" + tokenString() + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error(theField + " " + tokenString() + " is out of range");
+        }
+        return (int) value;
+    }
+
+    // plain decimals are parsed in place, anything else (exponents, long mantissas) goes to Double.parseDouble
+    private double readDouble(String theField) throws IOException {
+        expectToken(theField);
+        int i = myTokenStart;
+        boolean negative = myBuffer[i] == '-';
+        if (negative || myBuffer[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1; // digits after the point, -1 until we've seen one
+        for (; i < myTokenEnd; i++) {
+            byte b = myBuffer[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return parseSlow(theField);
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return parseSlow(theField);
+            }
+        }
+        if (digits == 0) {
+            throw error("expected a number for " + theField + " but got \"" + tokenString() + "\"");
+        }
+        if (decimals >= POWERS_OF_TEN.length) {
+            return parseSlow(theField);
+        }
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseSlow(String theField) throws IOException {
+        try {
+            return Double.parseDouble(tokenString());
+        } catch (NumberFormatException e) {
+            throw error("expected a number for " + theField + " but got \"" + tokenString() + "\"");
+        }
+    }
+
+    private void expectToken(String theField) throws IOException {
+        if (!nextToken()) {
+            throw new MapFormatException("record ended before its " + theField, myLine, myColumn);
+        }
+    }
+
+    private boolean isToken(char theChar) {
+        return myTokenEnd - myTokenStart == 1 && myBuffer[myTokenStart] == theChar;
+    }
+
+    private String tokenString() {
+        return new String(myBuffer, myTokenStart, myTokenEnd - myTokenStart, StandardCharsets.UTF_8);
+    }
+
+    // lines read so far, only complete once the input has been read to its end
+    int getLineCount() {
+        return myLine;
+    }
+
+    private MapFormatException error(String theMessage) {
+        return new MapFormatException(theMessage, myTokenLine, myTokenColumn);
+    }
+
+    // moves to the next whitespace separated token, false at the end of the input
+    private boolean nextToken() throws IOException {
+        while (true) {
+            if (myPos == myLimit) {
+                myPos = 0; // nothing in the buffer is needed anymore
+                myLimit = 0;
+                if (!fill()) {
+                    return false;
+                }
+            }
+            byte b = myBuffer[myPos];
+            if (!isWhitespace(b)) {
+                break;
+            }
+            myPos++;
+            if (b == '\n') {
+                myLine++;
+                myColumn = 1;
+            } else {
+                myColumn++;
+            }
+        }
+        myTokenLine = myLine;
+        myTokenColumn = myColumn;
+        myTokenStart = myPos;
+        while (true) {
+            if (myPos == myLimit) {
+                if (myEnded) {
+                    break;
+                }
+                // keep the partial token at the front of the buffer while reading more of it
+                int length = myPos - myTokenStart;
+                if (length == myBuffer.length) {
+                    throw error("token is longer than " + myBuffer.length + " bytes");
+                }
+                System.arraycopy(myBuffer, myTokenStart, myBuffer, 0, length);
+                myLimit = length;
+                myPos = length;
+                myTokenStart = 0;
+                if (!fill()) {
+                    break;
+                }
+            }
+            if (isWhitespace(myBuffer[myPos])) {
+                break;
+            }
+            myPos++;
+            myColumn++;
+        }
+        myTokenEnd = myPos;
+        return true;
+    }
+
+    // reads more input into the buffer after myLimit
+    private boolean fill() throws IOException {
+        if (myEnded) {
+            return false;
+        }
+        int read = myInput.read(myBuffer, myLimit, myBuffer.length - myLimit);
+        if (read <= 0) {
+            myEnded = true;
+            return false;
+        }
+        myLimit += read;
+        return true;
+    }
+
+    private static boolean isWhitespace(byte theByte) {
+        return theByte == ' ' || theByte == '\n' || theByte == '\r' || theByte == '\t' || theByte == '\f';
+    }
+}
@@ -0,0 +1,284 @@
+package Map;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads a text map file on a fork-join pool, for MapReader.readParallel. The file is cut into chunks at line breaks,
+ * each chunk is read and parsed into primitive arrays on its own, and the chunks are then merged in file order, so
+ * IDs, road ids and the order of every intersection's road list come out exactly as MapReader.read gives them.
+ * Roads are connected by first grouping them by intersection, which lets every intersection's list be filled by one
+ * thread without locking.
+ */
+final class ParallelMapLoader {
+    private static final int MAX_CHUNK_BYTES = 1 << 28;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int SCAN_BYTES = 4096;
+
+    private final Path myPath;
+    private final ForkJoinPool myPool;
+
+    ParallelMapLoader(Path thePath, ForkJoinPool thePool) {
+        this.myPath = thePath;
+        this.myPool = thePool;
+    }
+
+    CityMap load() throws IOException {
+        Chunk[] chunks;
+        try (FileChannel channel = FileChannel.open(myPath, StandardOpenOption.READ)) {
+            long[] bounds = splitAtLines(channel);
+            chunks = new Chunk[bounds.length - 1];
+            List<Runnable> work = new ArrayList<>();
+            for (int c = 0; c < chunks.length; c++) {
+                Chunk chunk = new Chunk(channel, bounds[c], bounds[c + 1]);
+                chunks[c] = chunk;
+                work.add(chunk::parse);
+            }
+            runAll(work);
+        }
+
+        // where every chunk starts in the whole file, in lines, intersections and roads
+        int[] firstLine = new int[chunks.length];
+        int[] firstIntersection = new int[chunks.length + 1];
+        int[] firstRoad = new int[chunks.length + 1];
+        int line = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            if (chunk.myError != null) {
+                throw moved(chunk.myError, line);
+            }
+            firstLine[c] = line;
+            line += chunk.myLineBreaks;
+            firstIntersection[c + 1] = firstIntersection[c] + chunk.myIntersectionCount;
+            firstRoad[c + 1] = firstRoad[c] + chunk.myRoadCount;
+        }
+
+        CityMap result = new CityMap();
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            for (int i = 0; i < chunk.myIntersectionCount; i++) {
+                int expected = firstIntersection[c] + i + 1;
+                if (chunk.myIDs[i] != expected) {
+                    throw new MapFormatException("expected intersection ID " + expected + " but got " + chunk.myIDs[i],
+                            firstLine[c] + chunk.myIntersectionLines[i], chunk.myIntersectionColumns[i]);
+                }
+                result.addIntersection(chunk.myLocations[i] ? 1 : 0, expected);
+            }
+        }
+        Intersection[] intersections = result.getAllIntersections();
+
+        // make the roads chunk by chunk, each road can only use intersections declared before it
+        Road[] roads = new Road[firstRoad[chunks.length]];
+        List<Runnable> work = new ArrayList<>();
+        for (int c = 0; c < chunks.length; c++) {
+            int chunkIndex = c;
+            work.add(() -> chunks[chunkIndex].makeRoads(intersections, firstIntersection[chunkIndex],
+                    roads, firstRoad[chunkIndex]));
+        }
+        runAll(work);
+        for (int c = 0; c < chunks.length; c++) {
+            if (chunks[c].myError != null) {
+                throw moved(chunks[c].myError, firstLine[c]);
+            }
+        }
+
+        // group the roads by intersection in the order Intersection.connectIntersection would have added them
+        int[] offsets = new int[intersections.length + 1];
+        for (Road r : roads) {
+            offsets[r.getSource().getID()]++;
+            offsets[r.getDestination().getID()]++;
+        }
+        for (int i = 0; i < intersections.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] slots = new int[offsets[intersections.length]];
+        int[] fill = Arrays.copyOf(offsets, intersections.length);
+        for (int r = 0; r < roads.length; r++) {
+            slots[fill[roads[r].getDestination().getID() - 1]++] = r;
+            slots[fill[roads[r].getSource().getID() - 1]++] = r;
+        }
+        work.clear();
+        int parts = chunks.length;
+        for (int p = 0; p < parts; p++) {
+            int from = (int) ((long) intersections.length * p / parts);
+            int to = (int) ((long) intersections.length * (p + 1) / parts);
+            work.add(() -> {
+                for (int node = from; node < to; node++) {
+                    for (int s = offsets[node]; s < offsets[node + 1]; s++) {
+                        intersections[node].addRoad(roads[slots[s]]);
+                    }
+                }
+            });
+        }
+        runAll(work);
+
+        result.addConnectedRoads(roads);
+        result.placeIntersections();
+        return result;
+    }
+
+    // chunk boundaries, each one just after a line break so no record is cut in two
+    private long[] splitAtLines(FileChannel theChannel) throws IOException {
+        long size = theChannel.size();
+        int count = (int) Math.max((long) myPool.getParallelism() * CHUNKS_PER_THREAD, size / MAX_CHUNK_BYTES + 1);
+        long[] bounds = new long[count + 1];
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BYTES);
+        int used = 1;
+        for (int c = 1; c < count; c++) {
+            long bound = Math.max(size * c / count, bounds[used - 1]);
+            bound = nextLineStart(theChannel, bound, scan);
+            if (bound > bounds[used - 1] && bound < size) {
+                bounds[used++] = bound;
+            }
+        }
+        bounds[used++] = size;
+        return Arrays.copyOf(bounds, used);
+    }
+
+    private static long nextLineStart(FileChannel theChannel, long thePosition, ByteBuffer theScan) throws IOException {
+        long position = thePosition;
+        while (true) {
+            theScan.clear();
+            int read = theChannel.read(theScan, position);
+            if (read <= 0) {
+                return position;
+            }
+            for (int i = 0; i < read; i++) {
+                if (theScan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private void runAll(List<Runnable> theWork) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(theWork.size());
+        for (Runnable r : theWork) {
+            tasks.add(ForkJoinTask.adapt(r));
+        }
+        myPool.invoke(ForkJoinTask.adapt(() -> {
+            ForkJoinTask.invokeAll(tasks);
+        }));
+    }
+
+    // a chunk's error with its line counted from the start of the file
+    private static IOException moved(IOException theError, int theLines) {
+        if (!(theError instanceof MapFormatException format)) {
+            return theError;
+        }
+        String message = format.getMessage().substring(format.getMessage().indexOf(": ") + 2);
+        return new MapFormatException(message, format.getLine() + theLines, format.getColumn());
+    }
+
+    // the records of one chunk, with lines counted from the start of the chunk
+    static final class Chunk {
+        private final FileChannel myChannel;
+        private final long myStart;
+        private final long myEnd;
+        private IOException myError;
+        private int myLineBreaks;
+
+        private int myIntersectionCount;
+        private boolean[] myLocations = new boolean[16];
+        private int[] myIDs = new int[16];
+        private int[] myIntersectionLines = new int[16];
+        private int[] myIntersectionColumns = new int[16];
+
+        private int myRoadCount;
+        private int[] mySources = new int[16];
+        private int[] myDestinations = new int[16];
+        private double[] myLengths = new double[16];
+        private double[] mySpeedLimits = new double[16];
+        private CardinalDirection[] myDirections = new CardinalDirection[16];
+        private int[] myIntersectionsBefore = new int[16]; // intersections this chunk declared before the road
+        private int[] myRoadLines = new int[16];
+        private int[] myRoadColumns = new int[16];
+
+        private Chunk(FileChannel theChannel, long theStart, long theEnd) {
+            this.myChannel = theChannel;
+            this.myStart = theStart;
+            this.myEnd = theEnd;
+        }
+
+        private void parse() {
+            try {
+                byte[] data = new byte[(int) (myEnd - myStart)];
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    if (myChannel.read(buffer, myStart + buffer.position()) < 0) {
+                        throw new IOException("file changed while it was being read");
+                    }
+                }
+                MapReader reader = new MapReader(data, data.length);
+                reader.readInto(null, this);
+                myLineBreaks = reader.getLineCount() - 1;
+            } catch (IOException e) {
+                myError = e;
+            }
+        }
+
+        void addIntersection(int isLocation, int theID, int theLine, int theColumn) {
+            if (myIntersectionCount == myIDs.length) {
+                int capacity = myIntersectionCount * 2;
+                myLocations = Arrays.copyOf(myLocations, capacity);
+                myIDs = Arrays.copyOf(myIDs, capacity);
+                myIntersectionLines = Arrays.copyOf(myIntersectionLines, capacity);
+                myIntersectionColumns = Arrays.copyOf(myIntersectionColumns, capacity);
+            }
+            myLocations[myIntersectionCount] = isLocation == 1;
+            myIDs[myIntersectionCount] = theID;
+            myIntersectionLines[myIntersectionCount] = theLine;
+            myIntersectionColumns[myIntersectionCount] = theColumn;
+            myIntersectionCount++;
+        }
+
+        void addRoad(int theSource, int theDestination, double theDistance, double theSpeedLimit,
+                     CardinalDirection theDirection, int theLine, int theColumn) {
+            if (myRoadCount == mySources.length) {
+                int capacity = myRoadCount * 2;
+                mySources = Arrays.copyOf(mySources, capacity);
+                myDestinations = Arrays.copyOf(myDestinations, capacity);
+                myLengths = Arrays.copyOf(myLengths, capacity);
+                mySpeedLimits = Arrays.copyOf(mySpeedLimits, capacity);
+                myDirections = Arrays.copyOf(myDirections, capacity);
+                myIntersectionsBefore = Arrays.copyOf(myIntersectionsBefore, capacity);
+                myRoadLines = Arrays.copyOf(myRoadLines, capacity);
+                myRoadColumns = Arrays.copyOf(myRoadColumns, capacity);
+            }
+            mySources[myRoadCount] = theSource;
+            myDestinations[myRoadCount] = theDestination;
+            myLengths[myRoadCount] = theDistance;
+            mySpeedLimits[myRoadCount] = theSpeedLimit;
+            myDirections[myRoadCount] = theDirection;
+            myIntersectionsBefore[myRoadCount] = myIntersectionCount;
+            myRoadLines[myRoadCount] = theLine;
+            myRoadColumns[myRoadCount] = theColumn;
+            myRoadCount++;
+        }
+
+        private void makeRoads(Intersection[] theIntersections, int theFirstIntersection, Road[] theRoads, int theFirstRoad) {
+            for (int r = 0; r < myRoadCount; r++) {
+                int declared = theFirstIntersection + myIntersectionsBefore[r];
+                int source = mySources[r];
+                int destination = myDestinations[r];
+                if (source < 1 || source > declared || destination < 1 || destination > declared) {
+                    int missing = source < 1 || source > declared ? source : destination;
+                    myError = new MapFormatException("road to intersection " + missing + " which hasn't been declared",
+                            myRoadLines[r], myRoadColumns[r]);
+                    return;
+                }
+                theRoads[theFirstRoad + r] = new Road(theFirstRoad + r, theIntersections[source - 1],
+                        theIntersections[destination - 1], myLengths[r], mySpeedLimits[r], myDirections[r]);
+            }
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package Map;
 
 public class Road {
+    private final int myId;
     private final Intersection[] myConnection;
     private final double myLength;
     private final double mySpeedLimit;
     private final CardinalDirection myDirection;
 
     public Road(Intersection theSource, Intersection theDestination, double theDistance, double theSpeedLimit, CardinalDirection theDirection) {
+        this(-1, theSource, theDestination, theDistance, theSpeedLimit, theDirection);
+    }
+
+    // roads created by a CityMap carry their index in the map's road list as a dense id
+    Road(int theID, Intersection theSource, Intersection theDestination, double theDistance, double theSpeedLimit, CardinalDirection theDirection) {
+        this.myId = theID;
         this.myConnection = new Intersection[]{theSource, theDestination};
         this.myLength = theDistance;
         this.mySpeedLimit = theSpeedLimit;
         this.myDirection = theDirection;
     }
 
+    public int getID() {
+        return myId;
+    } // index of the road in its map, -1 if the road doesn't belong to one
+
     public double getLength() {
         return myLength;
     } // length in meters
@@ -78,10 +78,20 @@ public class Model {
         return false;
     }
 
+    // swaps in a new version of the current simulation with theChanges applied
+    public void applyConditionChanges(ConditionDelta theChanges) {
+        helpLoadSimulation(mySim.apply(theChanges));
+    }
+
     public void loadSimFromSeed(Long theRNGSeed) {
         helpLoadSimulation(new EnvironmentSimulator(myMap, theRNGSeed));
     }
 
+    // simulations of the current map for every seed, for comparing seeds without loading each one
+    public EnvironmentSimulator[] simulateSeeds(long... theRNGSeeds) {
+        return EnvironmentSimulator.simulateAll(myMap, theRNGSeeds);
+    }
+
     // methods for loading/returning map data
 
     public Intersection[] getIntersectionList() {
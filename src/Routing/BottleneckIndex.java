@@ -0,0 +1,193 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+/**
+ * Answers "what's the lowest safety threshold that still connects these two intersections" for one simulation, in
+ * O(log n) per query. It's a Kruskal reconstruction tree: roads are joined in order of the highest risk among the
+ * road and its two ends, and every join makes a tree node weighted with that risk, so the weight of the lowest
+ * common ancestor of two intersections is the least possible max risk of a route between them. Ancestors are found
+ * with skew-binary jump pointers, O(log n) like binary lifting but with one pointer per node.
+ *
+ * A route under a threshold exists exactly when Router.compareDouble(getBottleneck(start, end), threshold) isn't 1,
+ * the same comparison the routers prune with.
+ */
+public final class BottleneckIndex {
+    private static final int NO_NODE = -1;
+
+    private final long mySimVersion;
+    private final int[] myComponents; // by intersection node, intersections connected by some route share one
+    // tree nodes, the intersections are the leaves 0..n-1 and every join adds one node above them
+    private final int[] myParents;
+    private final int[] myJumps;
+    private final int[] myDepths;
+    private final double[] myWeights;
+
+    public BottleneckIndex(CityMap theMap, EnvironmentSimulator theSim) {
+        CompactGraph graph = theMap.getCompactGraph();
+        CompiledConditions conditions = theSim.getCompiledConditions();
+        int n = graph.getIntersectionCount();
+        int m = graph.getRoadCount();
+        mySimVersion = theSim.getVersion();
+
+        double[] roadWeights = new double[m];
+        for (int r = 0; r < m; r++) {
+            roadWeights[r] = Math.max(conditions.getRoadRisk(r), Math.max(
+                    conditions.getIntersectionRisk(graph.getSource(r)),
+                    conditions.getIntersectionRisk(graph.getDestination(r))));
+        }
+        int[] order = sortByWeight(roadWeights);
+
+        int capacity = Math.max(1, 2 * n - 1);
+        myParents = new int[capacity];
+        myWeights = new double[capacity];
+        for (int i = 0; i < n; i++) {
+            myParents[i] = NO_NODE;
+            myWeights[i] = conditions.getIntersectionRisk(i);
+        }
+        // union-find over the intersections, with the tree node on top of every set
+        int[] sets = new int[n];
+        int[] sizes = new int[n];
+        int[] tops = new int[n];
+        for (int i = 0; i < n; i++) {
+            sets[i] = i;
+            sizes[i] = 1;
+            tops[i] = i;
+        }
+        int count = n;
+        for (int road : order) {
+            int a = find(sets, graph.getSource(road));
+            int b = find(sets, graph.getDestination(road));
+            if (a == b) {
+                continue;
+            }
+            int joined = count++;
+            myParents[joined] = NO_NODE;
+            myWeights[joined] = roadWeights[road];
+            myParents[tops[a]] = joined;
+            myParents[tops[b]] = joined;
+            if (sizes[a] < sizes[b]) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            sets[b] = a;
+            sizes[a] += sizes[b];
+            tops[a] = joined;
+        }
+        myComponents = new int[n];
+        for (int i = 0; i < n; i++) {
+            myComponents[i] = find(sets, i);
+        }
+
+        // a parent always comes after its children, so going backward sets up every parent before its children
+        myDepths = new int[count];
+        myJumps = new int[count];
+        for (int node = count - 1; node >= 0; node--) {
+            int parent = myParents[node];
+            if (parent == NO_NODE) {
+                myDepths[node] = 0;
+                myJumps[node] = node;
+                continue;
+            }
+            myDepths[node] = myDepths[parent] + 1;
+            int jump = myJumps[parent];
+            if (myDepths[parent] - myDepths[jump] == myDepths[jump] - myDepths[myJumps[jump]]) {
+                myJumps[node] = myJumps[jump];
+            } else {
+                myJumps[node] = parent;
+            }
+        }
+    }
+
+    // whether this index was built for theSim, every version of a simulation needs its own
+    public boolean isFor(EnvironmentSimulator theSim) {
+        return theSim.getVersion() == mySimVersion;
+    }
+
+    /**
+     * @return the least max safety risk over every route from theStart to theEnd, roads and intersections both
+     * counted, infinite if no route connects them at all
+     */
+    public double getBottleneck(Intersection theStart, Intersection theEnd) {
+        int start = CompactGraph.toNode(theStart.getID());
+        int end = CompactGraph.toNode(theEnd.getID());
+        if (myComponents[start] != myComponents[end]) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return myWeights[ancestor(start, end)];
+    }
+
+    // whether a route with no road or intersection over theThreshold connects the two
+    public boolean isConnected(Intersection theStart, Intersection theEnd, double theThreshold) {
+        return Router.compareDouble(getBottleneck(theStart, theEnd), theThreshold) != 1;
+    }
+
+    private int ancestor(int theNode, int theOther) {
+        int a = theNode;
+        int b = theOther;
+        if (myDepths[a] < myDepths[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        while (myDepths[a] > myDepths[b]) {
+            a = myDepths[myJumps[a]] >= myDepths[b] ? myJumps[a] : myParents[a];
+        }
+        // at the same depth the jumps land at the same depth too
+        while (a != b) {
+            if (myJumps[a] != myJumps[b]) {
+                a = myJumps[a];
+                b = myJumps[b];
+            } else {
+                a = myParents[a];
+                b = myParents[b];
+            }
+        }
+        return a;
+    }
+
+    private static int find(int[] theSets, int theNode) {
+        int root = theNode;
+        while (theSets[root] != root) {
+            root = theSets[root];
+        }
+        for (int node = theNode; theSets[node] != root; ) { // path compression
+            int next = theSets[node];
+            theSets[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    // indices of theWeights in ascending order of weight, equal ones kept in index order, by a bottom up merge sort
+    // so nothing gets boxed. PlateauAlternatives orders its plateaus with it too
+    static int[] sortByWeight(double[] theWeights) {
+        int length = theWeights.length;
+        int[] order = new int[length];
+        int[] buffer = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < length; width *= 2) {
+            for (int low = 0; low < length; low += 2 * width) {
+                int middle = Math.min(low + width, length);
+                int high = Math.min(low + 2 * width, length);
+                int left = low;
+                int right = middle;
+                for (int out = low; out < high; out++) {
+                    if (right >= high || (left < middle && theWeights[order[left]] <= theWeights[order[right]])) {
+                        buffer[out] = order[left++];
+                    } else {
+                        buffer[out] = order[right++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+}
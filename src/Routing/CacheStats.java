@@ -0,0 +1,49 @@
+package Routing;
+
+// counters of a RouteManager's route cache at one point in time
+public final class CacheStats {
+    private final long myHits;
+    private final long myMisses;
+    private final long myEvictions;
+    private final int mySize;
+    private final long myWeight;
+
+    CacheStats(long theHits, long theMisses, long theEvictions, int theSize, long theWeight) {
+        this.myHits = theHits;
+        this.myMisses = theMisses;
+        this.myEvictions = theEvictions;
+        this.mySize = theSize;
+        this.myWeight = theWeight;
+    }
+
+    public long getHits() {
+        return myHits;
+    }
+
+    public long getMisses() {
+        return myMisses;
+    }
+
+    public long getEvictions() {
+        return myEvictions;
+    } // entries dropped to stay within the bounds, invalidations don't count
+
+    public int getSize() {
+        return mySize;
+    } // cached queries
+
+    public long getWeight() {
+        return myWeight;
+    } // intersections held by the cached routes
+
+    public double getHitRate() {
+        long total = myHits + myMisses;
+        return total == 0 ? 0 : (double) myHits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits " + myHits + ", misses " + myMisses + ", evictions " + myEvictions + ", size " + mySize
+                + ", weight " + myWeight;
+    }
+}
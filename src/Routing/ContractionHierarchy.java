@@ -0,0 +1,394 @@
+package Routing;
+
+import Map.*;
+
+import java.util.Arrays;
+
+/**
+ * Contraction Hierarchies over the default road times of a CityMap. Preprocessing contracts the intersections one
+ * by one in order of importance, adding a shortcut between two neighbors whenever the only shortest path between them
+ * ran through the contracted intersection. Queries are then bidirectional Dijkstra searches that only go up the
+ * order, and shortcuts are unpacked back to the intersections they skip over.
+ * Since default times never change, the hierarchy is built once per map and a query settles a few hundred nodes.
+ */
+public class ContractionHierarchy {
+    private static final int NO_MIDDLE = -1; // marks an original road rather than a shortcut
+    private static final int WITNESS_SETTLE_LIMIT = 100;
+    private static final int SIMULATION_SETTLE_LIMIT = 20; // a cheaper, rougher search is enough to rank nodes
+    private static final int INITIAL_DEGREE = 4;
+
+    private final CompactGraph myGraph;
+    private final Intersection[] myIntersections;
+    private final int[] myRank;
+
+    // upward graph, edges of node n go to higher ranked nodes and are in [myUpOffsets[n], myUpOffsets[n+1])
+    private final int[] myUpOffsets;
+    private final int[] myUpTargets;
+    private final double[] myUpWeights;
+    private final int[] myUpMiddles;
+
+    // query state
+    private final SearchState myForward;
+    private final SearchState myBackward;
+    private int mySettledCount;
+
+    // contraction state, dropped once the upward graph is built
+    private int[][] myNeighbors;
+    private double[][] myWeights;
+    private int[][] myMiddles;
+    private int[] myDegrees;
+    private boolean[] myContracted;
+    private int[] myDeletedNeighbors;
+    private int[] myLevels; // how many contractions deep the node sits, keeps the hierarchy shallow
+    private SearchState myWitnessState;
+    private int[] myTargetMarks; // marks the neighbors a witness search still has to settle
+    private int myTargetEpoch;
+
+    public ContractionHierarchy(CityMap theMap) {
+        myGraph = theMap.getCompactGraph();
+        myIntersections = theMap.getAllIntersections();
+        int n = myGraph.getIntersectionCount();
+        myRank = new int[n];
+
+        initContraction();
+        contractAll();
+
+        // keep the edges that go up the order, both ends of every edge are still in the contraction lists
+        myUpOffsets = new int[n + 1];
+        for (int node = 0; node < n; node++) {
+            for (int i = 0; i < myDegrees[node]; i++) {
+                if (myRank[myNeighbors[node][i]] > myRank[node]) {
+                    myUpOffsets[node + 1]++;
+                }
+            }
+        }
+        for (int node = 0; node < n; node++) {
+            myUpOffsets[node + 1] += myUpOffsets[node];
+        }
+        myUpTargets = new int[myUpOffsets[n]];
+        myUpWeights = new double[myUpOffsets[n]];
+        myUpMiddles = new int[myUpOffsets[n]];
+        for (int node = 0; node < n; node++) {
+            int edge = myUpOffsets[node];
+            for (int i = 0; i < myDegrees[node]; i++) {
+                if (myRank[myNeighbors[node][i]] > myRank[node]) {
+                    myUpTargets[edge] = myNeighbors[node][i];
+                    myUpWeights[edge] = myWeights[node][i];
+                    myUpMiddles[edge] = myMiddles[node][i];
+                    edge++;
+                }
+            }
+        }
+        myNeighbors = null;
+        myWeights = null;
+        myMiddles = null;
+        myDegrees = null;
+        myContracted = null;
+        myDeletedNeighbors = null;
+        myLevels = null;
+        myWitnessState = null;
+        myTargetMarks = null;
+
+        myForward = new SearchState(n);
+        myBackward = new SearchState(n);
+    }
+
+    /**
+     * Fastest route by default road times, the same route cost Router.computeRoute(theStart, theEnd) finds.
+     * @return null if we cannot compute route, route as a series of intersection IDs
+     */
+    public Route computeRoute(Intersection theStart, Intersection theEnd) {
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        mySettledCount = 0;
+        myForward.reset();
+        myBackward.reset();
+        myForward.setWeight(start, 0, SearchState.NO_NODE);
+        myForward.getHeap().push(start, 0);
+        myBackward.setWeight(target, 0, SearchState.NO_NODE);
+        myBackward.getHeap().push(target, 0);
+
+        double bestTotal = Double.POSITIVE_INFINITY;
+        int meet = start == target ? start : SearchState.NO_NODE;
+        if (start == target) {
+            bestTotal = 0;
+        }
+        boolean isForward = true;
+        while (true) {
+            // each direction stops once it can't improve on the best meeting point
+            boolean forwardDone = myForward.getHeap().isEmpty() || myForward.getHeap().peekKey() >= bestTotal;
+            boolean backwardDone = myBackward.getHeap().isEmpty() || myBackward.getHeap().peekKey() >= bestTotal;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            if (forwardDone || backwardDone) {
+                isForward = backwardDone;
+            }
+            SearchState state = isForward ? myForward : myBackward;
+            SearchState other = isForward ? myBackward : myForward;
+            isForward = !isForward;
+
+            int current = state.getHeap().pop();
+            state.close(current);
+            mySettledCount++;
+            double currentWeight = state.getWeight(current);
+            for (int e = myUpOffsets[current]; e < myUpOffsets[current + 1]; e++) {
+                int next = myUpTargets[e];
+                double pathTotal = currentWeight + myUpWeights[e];
+                if (pathTotal < state.getWeight(next)) {
+                    state.setWeight(next, pathTotal, current);
+                    state.getHeap().push(next, pathTotal);
+                    if (other.isSeen(next) && pathTotal + other.getWeight(next) < bestTotal) { // both searches reached it
+                        bestTotal = pathTotal + other.getWeight(next);
+                        meet = next;
+                    }
+                }
+            }
+        }
+        if (meet == SearchState.NO_NODE) {
+            return null;
+        }
+
+        // unpack start..meet and meet..end, the second half walks up from the end so it gets flipped
+        IntList path = new IntList();
+        int[] up = myForward.pathTo(meet);
+        path.add(up[0]);
+        for (int i = 1; i < up.length; i++) {
+            unpack(up[i - 1], up[i], path);
+        }
+        int[] down = myBackward.pathTo(meet);
+        for (int i = down.length - 1; i > 0; i--) {
+            unpack(down[i], down[i - 1], path);
+        }
+        Intersection[] result = new Intersection[path.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = myIntersections[path.get(i)];
+        }
+        return new Route(result);
+    }
+
+    // number of nodes settled by the last query
+    public int getSettledCount() {
+        return mySettledCount;
+    }
+
+    public int getShortcutCount() {
+        return myUpTargets.length - myGraph.getRoadCount();
+    } // roughly, since parallel roads collapse into one edge
+
+    // appends every intersection after theFrom up to theTo, expanding shortcuts recursively
+    private void unpack(int theFrom, int theTo, IntList thePath) {
+        int low = myRank[theFrom] < myRank[theTo] ? theFrom : theTo;
+        int high = low == theFrom ? theTo : theFrom;
+        int middle = NO_MIDDLE;
+        for (int e = myUpOffsets[low]; e < myUpOffsets[low + 1]; e++) {
+            if (myUpTargets[e] == high) {
+                middle = myUpMiddles[e];
+                break;
+            }
+        }
+        if (middle == NO_MIDDLE) {
+            thePath.add(theTo);
+            return;
+        }
+        unpack(theFrom, middle, thePath);
+        unpack(middle, theTo, thePath);
+    }
+
+    private void initContraction() {
+        int n = myGraph.getIntersectionCount();
+        myNeighbors = new int[n][];
+        myWeights = new double[n][];
+        myMiddles = new int[n][];
+        myDegrees = new int[n];
+        myContracted = new boolean[n];
+        myDeletedNeighbors = new int[n];
+        myLevels = new int[n];
+        myWitnessState = new SearchState(n);
+        myTargetMarks = new int[n];
+        for (int node = 0; node < n; node++) {
+            int degree = Math.max(INITIAL_DEGREE, myGraph.getEdgeEnd(node) - myGraph.getEdgeStart(node));
+            myNeighbors[node] = new int[degree];
+            myWeights[node] = new double[degree];
+            myMiddles[node] = new int[degree];
+        }
+        for (int node = 0; node < n; node++) {
+            for (int e = myGraph.getEdgeStart(node); e < myGraph.getEdgeEnd(node); e++) {
+                int next = myGraph.getTarget(e);
+                if (next != node) {
+                    addEdge(node, next, myGraph.getDefaultTime(myGraph.getRoad(e)), NO_MIDDLE);
+                }
+            }
+        }
+    }
+
+    private void contractAll() {
+        int n = myGraph.getIntersectionCount();
+        IndexedHeap order = new IndexedHeap(n);
+        for (int node = 0; node < n; node++) {
+            order.push(node, priority(node));
+        }
+        int rank = 0;
+        while (!order.isEmpty()) {
+            int node = order.pop();
+            // priorities go stale as neighbors get contracted, so re-check before committing to this node
+            double updated = priority(node);
+            if (!order.isEmpty() && updated > order.peekKey()) {
+                order.push(node, updated);
+                continue;
+            }
+            contract(node, true);
+            myContracted[node] = true;
+            myRank[node] = rank++;
+            // the contracted node keeps its list, which now only holds higher ranked nodes, its neighbors forget it
+            for (int i = 0; i < myDegrees[node]; i++) {
+                int neighbor = myNeighbors[node][i];
+                removeEdge(neighbor, node);
+                myDeletedNeighbors[neighbor]++;
+                myLevels[neighbor] = Math.max(myLevels[neighbor], myLevels[node] + 1);
+            }
+        }
+    }
+
+    // edge difference, plus contracted neighbors and depth so the order spreads out over the map and stays shallow.
+    // contracted neighbors were already dropped from the list, so the degree is just the list size
+    private double priority(int theNode) {
+        int shortcuts = contract(theNode, false);
+        return 2 * (shortcuts - myDegrees[theNode]) + myDeletedNeighbors[theNode] + myLevels[theNode];
+    }
+
+    // counts the shortcuts contracting theNode needs, and adds them if asked to
+    private int contract(int theNode, boolean addShortcuts) {
+        int shortcuts = 0;
+        int[] neighbors = myNeighbors[theNode];
+        double[] weights = myWeights[theNode];
+        int degree = myDegrees[theNode];
+        for (int i = 0; i < degree; i++) {
+            int from = neighbors[i];
+            if (myContracted[from]) {
+                continue;
+            }
+            double maxVia = -1;
+            int targets = 0;
+            myTargetEpoch++;
+            for (int j = i + 1; j < degree; j++) {
+                if (!myContracted[neighbors[j]] && neighbors[j] != from) {
+                    maxVia = Math.max(maxVia, weights[i] + weights[j]);
+                    myTargetMarks[neighbors[j]] = myTargetEpoch;
+                    targets++;
+                }
+            }
+            if (targets == 0) { // no uncontracted neighbor left to pair with
+                continue;
+            }
+            witnessSearch(from, theNode, maxVia, targets, addShortcuts ? WITNESS_SETTLE_LIMIT : SIMULATION_SETTLE_LIMIT);
+            for (int j = i + 1; j < degree; j++) {
+                int to = neighbors[j];
+                if (myContracted[to] || to == from) {
+                    continue;
+                }
+                double via = weights[i] + weights[j];
+                if (myWitnessState.getWeight(to) > via) { // no path around theNode is as short
+                    shortcuts++;
+                    if (addShortcuts) {
+                        addEdge(from, to, via, theNode);
+                        addEdge(to, from, via, theNode);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    // bounded Dijkstra among the uncontracted nodes, avoiding the node being contracted. stops once every marked
+    // target is settled, the queue passes theMaxWeight, or theSettleLimit nodes are settled
+    private void witnessSearch(int theSource, int theAvoid, double theMaxWeight, int theTargets, int theSettleLimit) {
+        SearchState state = myWitnessState;
+        IndexedHeap heap = state.getHeap();
+        state.reset();
+        state.setWeight(theSource, 0, SearchState.NO_NODE);
+        heap.push(theSource, 0);
+        int settled = 0;
+        while (!heap.isEmpty() && settled < theSettleLimit) {
+            int current = heap.pop();
+            state.close(current);
+            settled++;
+            double currentWeight = state.getWeight(current);
+            if (currentWeight > theMaxWeight) {
+                break;
+            }
+            if (myTargetMarks[current] == myTargetEpoch && --theTargets == 0) {
+                break;
+            }
+            for (int i = 0; i < myDegrees[current]; i++) {
+                int next = myNeighbors[current][i];
+                if (next == theAvoid || myContracted[next] || state.isClosed(next)) {
+                    continue;
+                }
+                double pathTotal = currentWeight + myWeights[current][i];
+                if (pathTotal < state.getWeight(next)) {
+                    state.setWeight(next, pathTotal, current);
+                    heap.push(next, pathTotal);
+                }
+            }
+        }
+    }
+
+    // adds the edge, or lowers the weight of an existing parallel edge
+    private void addEdge(int theFrom, int theTo, double theWeight, int theMiddle) {
+        int degree = myDegrees[theFrom];
+        for (int i = 0; i < degree; i++) {
+            if (myNeighbors[theFrom][i] == theTo) {
+                if (theWeight < myWeights[theFrom][i]) {
+                    myWeights[theFrom][i] = theWeight;
+                    myMiddles[theFrom][i] = theMiddle;
+                }
+                return;
+            }
+        }
+        if (degree == myNeighbors[theFrom].length) {
+            int capacity = degree * 2;
+            myNeighbors[theFrom] = Arrays.copyOf(myNeighbors[theFrom], capacity);
+            myWeights[theFrom] = Arrays.copyOf(myWeights[theFrom], capacity);
+            myMiddles[theFrom] = Arrays.copyOf(myMiddles[theFrom], capacity);
+        }
+        myNeighbors[theFrom][degree] = theTo;
+        myWeights[theFrom][degree] = theWeight;
+        myMiddles[theFrom][degree] = theMiddle;
+        myDegrees[theFrom]++;
+    }
+
+    private void removeEdge(int theFrom, int theTo) {
+        int last = myDegrees[theFrom] - 1;
+        for (int i = 0; i <= last; i++) {
+            if (myNeighbors[theFrom][i] == theTo) {
+                myNeighbors[theFrom][i] = myNeighbors[theFrom][last];
+                myWeights[theFrom][i] = myWeights[theFrom][last];
+                myMiddles[theFrom][i] = myMiddles[theFrom][last];
+                myDegrees[theFrom] = last;
+                return;
+            }
+        }
+    }
+
+    // growable int list for unpacking paths
+    static class IntList { // also used by OverlayRouter
+        private int[] myValues = new int[16];
+        private int mySize;
+
+        void add(int theValue) {
+            if (mySize == myValues.length) {
+                myValues = Arrays.copyOf(myValues, mySize * 2);
+            }
+            myValues[mySize++] = theValue;
+        }
+
+        int get(int theIndex) {
+            return myValues[theIndex];
+        }
+
+        int size() {
+            return mySize;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package Routing;
+
+import java.util.Arrays;
+
+/**
+ * Primitive 4-ary min heap of node ids with O(log n) decrease-key. Each id in [0, capacity) can be in the heap at
+ * most once, and its position is tracked so that it can be found without a linear scan. A heap made with a
+ * secondary key orders ids by (key, secondary key), and is filled through push(id, key, secondary).
+ */
+final class IndexedHeap {
+    private static final int ARITY = 4;
+    private static final int ABSENT = -1;
+
+    private final int[] myHeap; // ids in heap order
+    private final double[] myKeys; // key by id
+    private final int[] myPositions; // heap position by id, ABSENT if the id isn't queued
+    private final double[] mySecondaryKeys; // tie breaker by id, null unless asked for
+    private int mySize;
+
+    IndexedHeap(int theCapacity) {
+        this(theCapacity, false);
+    }
+
+    IndexedHeap(int theCapacity, boolean withSecondaryKey) {
+        myHeap = new int[theCapacity];
+        myKeys = new double[theCapacity];
+        myPositions = new int[theCapacity];
+        mySecondaryKeys = withSecondaryKey ? new double[theCapacity] : null;
+        Arrays.fill(myPositions, ABSENT);
+    }
+
+    boolean isEmpty() {
+        return mySize == 0;
+    }
+
+    int size() {
+        return mySize;
+    }
+
+    boolean contains(int theId) {
+        return myPositions[theId] != ABSENT;
+    }
+
+    double getKey(int theId) {
+        return myKeys[theId];
+    }
+
+    int peek() {
+        return myHeap[0];
+    }
+
+    double peekKey() {
+        return myKeys[myHeap[0]];
+    }
+
+    double peekSecondaryKey() {
+        return mySecondaryKeys[myHeap[0]];
+    }
+
+    // inserts the id, or moves it to the new key if it's already queued
+    void push(int theId, double theKey) {
+        int pos = myPositions[theId];
+        if (pos == ABSENT) {
+            myKeys[theId] = theKey;
+            siftUp(mySize++, theId);
+        } else if (theKey < myKeys[theId]) {
+            myKeys[theId] = theKey;
+            siftUp(pos, theId);
+        } else {
+            myKeys[theId] = theKey;
+            siftDown(pos, theId);
+        }
+    }
+
+    // push for heaps with a secondary key
+    void push(int theId, double theKey, double theSecondaryKey) {
+        int pos = myPositions[theId];
+        myKeys[theId] = theKey;
+        mySecondaryKeys[theId] = theSecondaryKey;
+        if (pos == ABSENT) {
+            siftUp(mySize++, theId);
+        } else {
+            siftUp(pos, theId);
+            if (myPositions[theId] == pos) {
+                siftDown(pos, theId);
+            }
+        }
+    }
+
+    int pop() {
+        int top = myHeap[0];
+        myPositions[top] = ABSENT;
+        int last = myHeap[--mySize];
+        if (mySize > 0) {
+            siftDown(0, last);
+        }
+        return top;
+    }
+
+    void remove(int theId) {
+        int pos = myPositions[theId];
+        if (pos == ABSENT) {
+            return;
+        }
+        myPositions[theId] = ABSENT;
+        int last = myHeap[--mySize];
+        if (pos < mySize) {
+            if (before(last, theId)) {
+                siftUp(pos, last);
+            } else {
+                siftDown(pos, last);
+            }
+        }
+    }
+
+    // only touches the queued ids, so clearing a nearly empty heap stays cheap
+    void clear() {
+        for (int i = 0; i < mySize; i++) {
+            myPositions[myHeap[i]] = ABSENT;
+        }
+        mySize = 0;
+    }
+
+    // whether theId goes above theOther, the secondary keys only matter on equal keys
+    private boolean before(int theId, int theOther) {
+        double key = myKeys[theId];
+        double other = myKeys[theOther];
+        return key < other || (key == other && mySecondaryKeys != null && mySecondaryKeys[theId] < mySecondaryKeys[theOther]);
+    }
+
+    private void siftUp(int thePos, int theId) {
+        int pos = thePos;
+        while (pos > 0) {
+            int parent = (pos - 1) / ARITY;
+            int parentId = myHeap[parent];
+            if (!before(theId, parentId)) {
+                break;
+            }
+            myHeap[pos] = parentId;
+            myPositions[parentId] = pos;
+            pos = parent;
+        }
+        myHeap[pos] = theId;
+        myPositions[theId] = pos;
+    }
+
+    private void siftDown(int thePos, int theId) {
+        int pos = thePos;
+        while (true) {
+            int firstChild = pos * ARITY + 1;
+            if (firstChild >= mySize) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + ARITY, mySize);
+            int best = firstChild;
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                if (before(myHeap[c], myHeap[best])) {
+                    best = c;
+                }
+            }
+            int bestId = myHeap[best];
+            if (!before(bestId, theId)) {
+                break;
+            }
+            myHeap[pos] = bestId;
+            myPositions[bestId] = pos;
+            pos = best;
+        }
+        myHeap[pos] = theId;
+        myPositions[theId] = pos;
+    }
+}
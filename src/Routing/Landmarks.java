@@ -0,0 +1,125 @@
+package Routing;
+
+import Map.*;
+
+import java.util.Arrays;
+
+/**
+ * Landmarks for ALT (A*, landmarks, triangle inequality) routing. Distances from a few landmarks to every
+ * intersection are precomputed on default road times, and |d(L, end) - d(L, v)| is then a lower bound on the time
+ * from v to the end. SafetyChecker.roadTime only ever scales a default time up, so the bounds hold under any
+ * EnvironmentSimulator, and the landmarks only need to be computed once per map.
+ */
+public class Landmarks {
+    public static final int DEFAULT_COUNT = 16;
+
+    private final int[] myLandmarks;
+    private final double[] myDistances; // node major, distance from landmark l to node n is at [n * count + l]
+    private final int myCount;
+
+    public Landmarks(CityMap theMap) {
+        this(theMap, DEFAULT_COUNT);
+    }
+
+    /**
+     * Picks landmarks by farthest point selection: each one is the intersection farthest from the landmarks picked so
+     * far, which spreads them out to the edges of the map where their bounds are tightest.
+     */
+    public Landmarks(CityMap theMap, int theCount) {
+        CompactGraph graph = theMap.getCompactGraph();
+        int n = graph.getIntersectionCount();
+        myCount = Math.min(theCount, n);
+        myLandmarks = new int[myCount];
+        myDistances = new double[n * myCount];
+
+        SearchState state = new SearchState(n);
+        double[] nearest = new double[n]; // distance to the closest landmark so far
+        double[] distances = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+
+        // start from whatever is farthest from the first intersection
+        int next = farthest(graph, state, 0, distances);
+        for (int l = 0; l < myCount; l++) {
+            myLandmarks[l] = next;
+            shortestDistances(graph, state, next, distances);
+            for (int node = 0; node < n; node++) {
+                myDistances[node * myCount + l] = distances[node];
+                nearest[node] = Math.min(nearest[node], distances[node]);
+            }
+            next = farthestFromLandmarks(nearest);
+        }
+    }
+
+    public int getCount() {
+        return myCount;
+    }
+
+    public int[] getLandmarks() {
+        return myLandmarks.clone();
+    } // node indexes of the landmarks
+
+    // copies the landmark distances of theNode into theResult, so a search only looks up its target's row once
+    void distancesOf(int theNode, double[] theResult) {
+        System.arraycopy(myDistances, theNode * myCount, theResult, 0, myCount);
+    }
+
+    // lower bound on the time between theNode and the node whose distances are in theTargetDistances
+    double lowerBound(int theNode, double[] theTargetDistances) {
+        double bound = 0;
+        int offset = theNode * myCount;
+        for (int l = 0; l < myCount; l++) {
+            double toNode = myDistances[offset + l];
+            double toTarget = theTargetDistances[l];
+            if (toNode != Double.POSITIVE_INFINITY && toTarget != Double.POSITIVE_INFINITY) {
+                bound = Math.max(bound, Math.abs(toTarget - toNode));
+            }
+        }
+        return bound;
+    }
+
+    private int farthest(CompactGraph theGraph, SearchState theState, int theSource, double[] theDistances) {
+        shortestDistances(theGraph, theState, theSource, theDistances);
+        int result = theSource;
+        for (int node = 0; node < theDistances.length; node++) {
+            if (theDistances[node] != Double.POSITIVE_INFINITY && theDistances[node] > theDistances[result]) {
+                result = node;
+            }
+        }
+        return result;
+    }
+
+    // the node farthest from every landmark, unreachable nodes count as farthest so other areas get a landmark too
+    private int farthestFromLandmarks(double[] theNearest) {
+        int result = 0;
+        for (int node = 1; node < theNearest.length; node++) {
+            if (theNearest[node] > theNearest[result]) {
+                result = node;
+            }
+        }
+        return result;
+    }
+
+    // plain Dijkstra over default times to every node
+    private static void shortestDistances(CompactGraph theGraph, SearchState theState, int theSource, double[] theResult) {
+        IndexedHeap heap = theState.getHeap();
+        theState.reset();
+        theState.setWeight(theSource, 0, SearchState.NO_NODE);
+        heap.push(theSource, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.pop();
+            theState.close(current);
+            double currentWeight = theState.getWeight(current);
+            for (int e = theGraph.getEdgeStart(current); e < theGraph.getEdgeEnd(current); e++) {
+                int next = theGraph.getTarget(e);
+                double pathTotal = currentWeight + theGraph.getDefaultTime(theGraph.getRoad(e));
+                if (!theState.isClosed(next) && pathTotal < theState.getWeight(next)) {
+                    theState.setWeight(next, pathTotal, current);
+                    heap.push(next, pathTotal);
+                }
+            }
+        }
+        for (int node = 0; node < theResult.length; node++) {
+            theResult[node] = theState.getWeight(node);
+        }
+    }
+}
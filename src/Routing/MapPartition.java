@@ -0,0 +1,253 @@
+package Routing;
+
+import Map.*;
+
+import java.util.Arrays;
+
+/**
+ * Nested cells of a CityMap for customizable route planning (see OverlayMetric). The intersections are split in
+ * half again and again across the wider side of their positions, and on every level the cells are the pieces that
+ * first fit the level's size, so each cell is a union of cells of the level below. Nothing here depends on road
+ * times or conditions, so a map is partitioned once and every simulation reuses it.
+ *
+ * Levels are numbered from 1 (the smallest cells) to getLevelCount(). A boundary intersection of a cell has a road to
+ * another cell of the same level. On level 1 the intersections a cell is customized over are all of its own, on
+ * higher levels they are the boundary intersections of the level below inside it.
+ */
+public final class MapPartition {
+    public static final int DEFAULT_CELL_SIZE = 128; // most intersections in a level 1 cell
+    private static final int LEVEL_FACTOR = 8; // each level's cells hold up to this many times more
+    private static final int MAX_LEVELS = 5;
+
+    private final CityMap myMap;
+    private final CompactGraph myGraph;
+    private final int myLevelCount;
+    private final int[] myBounds; // cell size bound by level - 1
+    private final int[] myCellCounts;
+    private final int[][] myCells; // [level - 1][node] cell of the node on that level
+
+    // intersections each cell is customized over, grouped by cell, and where each one is in its cell's group
+    private final int[][] myVertexOffsets;
+    private final int[][] myVertices;
+    private final int[][] myVertexIndex;
+
+    // boundary intersections, the same way
+    private final int[][] myBoundaryOffsets;
+    private final int[][] myBoundary;
+    private final int[][] myBoundaryIndex;
+
+    public MapPartition(CityMap theMap) {
+        this(theMap, DEFAULT_CELL_SIZE);
+    }
+
+    // theCellSize bounds the level 1 cells, levels are added while the map is more than twice the largest cell
+    public MapPartition(CityMap theMap, int theCellSize) {
+        if (theCellSize < 1) {
+            throw new IllegalArgumentException("cells need room for at least one intersection");
+        }
+        myMap = theMap;
+        myGraph = theMap.getCompactGraph();
+        int n = myGraph.getIntersectionCount();
+        int levels = 0;
+        long bound = theCellSize;
+        while (levels < MAX_LEVELS && bound * 2 < n) {
+            levels++;
+            bound *= LEVEL_FACTOR;
+        }
+        myLevelCount = levels;
+        myBounds = new int[levels];
+        for (int l = 0; l < levels; l++) {
+            myBounds[l] = (int) (theCellSize * Math.pow(LEVEL_FACTOR, l));
+        }
+
+        myCells = new int[levels][n];
+        myCellCounts = new int[levels];
+        if (levels > 0) {
+            int[] nodes = new int[n];
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int node = 0; node < n; node++) {
+                nodes[node] = node;
+                x[node] = myGraph.getX(node);
+                y[node] = myGraph.getY(node);
+            }
+            bisect(nodes, 0, n, levels, x, y);
+        }
+
+        myVertexOffsets = new int[levels][];
+        myVertices = new int[levels][];
+        myVertexIndex = new int[levels][];
+        myBoundaryOffsets = new int[levels][];
+        myBoundary = new int[levels][];
+        myBoundaryIndex = new int[levels][];
+        boolean[] isVertex = new boolean[n];
+        Arrays.fill(isVertex, true); // level 1 cells are customized over all of their intersections
+        for (int l = 0; l < levels; l++) {
+            boolean[] isBoundary = new boolean[n];
+            for (int node = 0; node < n; node++) {
+                for (int e = myGraph.getEdgeStart(node); e < myGraph.getEdgeEnd(node); e++) {
+                    if (myCells[l][myGraph.getTarget(e)] != myCells[l][node]) {
+                        isBoundary[node] = true;
+                        break;
+                    }
+                }
+            }
+            myVertexOffsets[l] = new int[myCellCounts[l] + 1];
+            myVertexIndex[l] = new int[n];
+            myVertices[l] = group(isVertex, myCells[l], myCellCounts[l], myVertexOffsets[l], myVertexIndex[l]);
+            myBoundaryOffsets[l] = new int[myCellCounts[l] + 1];
+            myBoundaryIndex[l] = new int[n];
+            myBoundary[l] = group(isBoundary, myCells[l], myCellCounts[l], myBoundaryOffsets[l], myBoundaryIndex[l]);
+            isVertex = isBoundary;
+        }
+    }
+
+    public int getLevelCount() {
+        return myLevelCount;
+    }
+
+    public int getCellCount(int theLevel) {
+        return myCellCounts[theLevel - 1];
+    }
+
+    // boundary intersections over all cells of theLevel
+    public int getBoundaryCount(int theLevel) {
+        return myBoundary[theLevel - 1].length;
+    }
+
+    public boolean compareMap(CityMap theMap) {
+        return theMap.equals(myMap);
+    }
+
+    CityMap getMap() {
+        return myMap;
+    }
+
+    CompactGraph getGraph() {
+        return myGraph;
+    }
+
+    int getCell(int theLevel, int theNode) {
+        return myCells[theLevel - 1][theNode];
+    }
+
+    int getVertexStart(int theLevel, int theCell) {
+        return myVertexOffsets[theLevel - 1][theCell];
+    }
+
+    int getVertexEnd(int theLevel, int theCell) {
+        return myVertexOffsets[theLevel - 1][theCell + 1];
+    }
+
+    int getVertex(int theLevel, int theIndex) {
+        return myVertices[theLevel - 1][theIndex];
+    }
+
+    // position of theNode among the vertices of its cell, -1 if it isn't one
+    int getVertexIndex(int theLevel, int theNode) {
+        return myVertexIndex[theLevel - 1][theNode];
+    }
+
+    int getBoundaryStart(int theLevel, int theCell) {
+        return myBoundaryOffsets[theLevel - 1][theCell];
+    }
+
+    int getBoundaryEnd(int theLevel, int theCell) {
+        return myBoundaryOffsets[theLevel - 1][theCell + 1];
+    }
+
+    int getBoundary(int theLevel, int theIndex) {
+        return myBoundary[theLevel - 1][theIndex];
+    }
+
+    // position of theNode among the boundary intersections of its cell, -1 if it isn't one
+    int getBoundaryIndex(int theLevel, int theNode) {
+        return myBoundaryIndex[theLevel - 1][theNode];
+    }
+
+    // gives the range a cell on every level it fits, from theLevel down, then splits it at the median of its wider side
+    private void bisect(int[] theNodes, int theFrom, int theTo, int theLevel, double[] theX, double[] theY) {
+        int level = theLevel;
+        while (level > 0 && theTo - theFrom <= myBounds[level - 1]) {
+            int cell = myCellCounts[level - 1]++;
+            for (int i = theFrom; i < theTo; i++) {
+                myCells[level - 1][theNodes[i]] = cell;
+            }
+            level--;
+        }
+        if (level == 0) {
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = theFrom; i < theTo; i++) {
+            minX = Math.min(minX, theX[theNodes[i]]);
+            maxX = Math.max(maxX, theX[theNodes[i]]);
+            minY = Math.min(minY, theY[theNodes[i]]);
+            maxY = Math.max(maxY, theY[theNodes[i]]);
+        }
+        int middle = (theFrom + theTo) >>> 1;
+        select(theNodes, theFrom, theTo, middle, maxX - minX >= maxY - minY ? theX : theY);
+        bisect(theNodes, theFrom, middle, level, theX, theY);
+        bisect(theNodes, middle, theTo, level, theX, theY);
+    }
+
+    // reorders theNodes[theFrom, theTo) so the one at theK has the same key it would have sorted, with nothing
+    // after it keyed lower and nothing before it keyed higher
+    private static void select(int[] theNodes, int theFrom, int theTo, int theK, double[] theKeys) {
+        int low = theFrom;
+        int high = theTo - 1;
+        while (low < high) {
+            double pivot = theKeys[theNodes[(low + high) >>> 1]];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (theKeys[theNodes[i]] < pivot) {
+                    i++;
+                }
+                while (theKeys[theNodes[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = theNodes[i];
+                    theNodes[i++] = theNodes[j];
+                    theNodes[j--] = swap;
+                }
+            }
+            if (theK <= j) {
+                high = j;
+            } else if (theK >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // the nodes with theMember set, grouped by cell into theOffsets, with theIndex set to each one's place in its group
+    private static int[] group(boolean[] theMember, int[] theCells, int theCellCount, int[] theOffsets, int[] theIndex) {
+        int n = theMember.length;
+        for (int node = 0; node < n; node++) {
+            if (theMember[node]) {
+                theOffsets[theCells[node] + 1]++;
+            }
+        }
+        for (int c = 0; c < theCellCount; c++) {
+            theOffsets[c + 1] += theOffsets[c];
+        }
+        int[] result = new int[theOffsets[theCellCount]];
+        int[] fill = Arrays.copyOf(theOffsets, theCellCount);
+        for (int node = 0; node < n; node++) {
+            if (theMember[node]) {
+                int slot = fill[theCells[node]]++;
+                result[slot] = node;
+                theIndex[node] = slot - theOffsets[theCells[node]];
+            } else {
+                theIndex[node] = -1;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,27 @@
+package Routing;
+
+import Map.Intersection;
+
+// an origin and destination to route between, one query of a RouteManager.computeRoutes batch
+public final class OdPair {
+    private final Intersection myStart;
+    private final Intersection myEnd;
+
+    public OdPair(Intersection theStart, Intersection theEnd) {
+        this.myStart = theStart;
+        this.myEnd = theEnd;
+    }
+
+    public Intersection getStart() {
+        return myStart;
+    }
+
+    public Intersection getEnd() {
+        return myEnd;
+    }
+
+    @Override
+    public String toString() {
+        return myStart.getID() + " -> " + myEnd.getID();
+    }
+}
@@ -0,0 +1,215 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The simulated road times of a MapPartition's cells, for OverlayRouter. Customizing finds, for every cell, the
+ * fastest time between each two of its boundary intersections without leaving the cell, and keeps them as a dense
+ * matrix per cell. Level 1 cells are searched on their own roads, and every higher level on the matrices of the
+ * level below plus the roads between those cells, so each level only costs a little more than the one before it.
+ * The cells of a level don't depend on each other and are customized in parallel.
+ *
+ * Roads and intersections over the threshold are left out just like Router leaves them out, so routes on the
+ * overlay take the same time as Router.computeRoute(start, end, threshold, sim). Customizing again for a new
+ * simulation reuses the partition as it is.
+ */
+public final class OverlayMetric {
+    private static final int CELLS_PER_THREAD = 4;
+    static final int NO_VERTEX = -1;
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    private final MapPartition myPartition;
+    private final CompactGraph myGraph;
+    private final double myThreshold;
+    private final long mySimVersion;
+    private final boolean[] myBlocked; // by node, intersections over the threshold
+    private final double[] myRoadTimes; // by road, infinite for roads over the threshold or with an end over it
+    // [level - 1] the matrices of every cell of the level one after the other, [level - 1][cell] where each starts
+    private final double[][] myMatrices;
+    private final int[][] myMatrixOffsets;
+
+    private OverlayMetric(MapPartition thePartition, EnvironmentSimulator theSim, double theThreshold) {
+        myPartition = thePartition;
+        myGraph = thePartition.getGraph();
+        CompiledConditions conditions = theSim.getCompiledConditions();
+        myThreshold = theThreshold;
+        mySimVersion = theSim.getVersion();
+        int levels = thePartition.getLevelCount();
+        myBlocked = new boolean[myGraph.getIntersectionCount()];
+        for (int node = 0; node < myBlocked.length; node++) {
+            myBlocked[node] = Router.compareDouble(conditions.getIntersectionRisk(node), theThreshold) == 1;
+        }
+        myRoadTimes = new double[myGraph.getRoadCount()];
+        for (int road = 0; road < myRoadTimes.length; road++) {
+            boolean isBlocked = myBlocked[myGraph.getSource(road)] || myBlocked[myGraph.getDestination(road)]
+                    || Router.compareDouble(conditions.getRoadRisk(road), theThreshold) == 1;
+            myRoadTimes[road] = isBlocked ? INF : conditions.getRoadTime(road);
+        }
+        myMatrices = new double[levels][];
+        myMatrixOffsets = new int[levels][];
+        for (int level = 1; level <= levels; level++) {
+            int cells = thePartition.getCellCount(level);
+            int[] offsets = new int[cells + 1];
+            for (int c = 0; c < cells; c++) {
+                int size = thePartition.getBoundaryEnd(level, c) - thePartition.getBoundaryStart(level, c);
+                offsets[c + 1] = Math.addExact(offsets[c], Math.multiplyExact(size, size));
+            }
+            myMatrixOffsets[level - 1] = offsets;
+            myMatrices[level - 1] = new double[offsets[cells]];
+        }
+    }
+
+    public static OverlayMetric customize(MapPartition thePartition, EnvironmentSimulator theSim, double theThreshold) {
+        return customize(thePartition, theSim, theThreshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Customizes thePartition for theSim, leaving out every road and intersection over theThreshold, with the
+     * cells of each level spread over thePool.
+     */
+    public static OverlayMetric customize(MapPartition thePartition, EnvironmentSimulator theSim, double theThreshold,
+                                          ForkJoinPool thePool) {
+        if (!theSim.compareMap(thePartition.getMap())) {
+            throw new IllegalArgumentException("the simulation isn't of the partitioned map");
+        }
+        OverlayMetric result = new OverlayMetric(thePartition, theSim, theThreshold);
+        for (int level = 1; level <= thePartition.getLevelCount(); level++) {
+            result.customizeLevel(level, thePool);
+        }
+        return result;
+    }
+
+    // whether this was customized for theSim and theThreshold
+    public boolean isFor(EnvironmentSimulator theSim, double theThreshold) {
+        return theSim.getVersion() == mySimVersion && Double.compare(theThreshold, myThreshold) == 0;
+    }
+
+    public double getThreshold() {
+        return myThreshold;
+    }
+
+    MapPartition getPartition() {
+        return myPartition;
+    }
+
+    boolean isBlocked(int theNode) {
+        return myBlocked[theNode];
+    }
+
+    // time of edge theEdge, infinite if the road or an intersection at either end of it is left out
+    double edgeTime(int theEdge) {
+        return myRoadTimes[myGraph.getRoad(theEdge)];
+    }
+
+    // fastest time inside theCell of theLevel from its boundary intersection theFrom to theTo, by boundary index
+    double cliqueTime(int theLevel, int theCell, int theFrom, int theTo) {
+        int size = myPartition.getBoundaryEnd(theLevel, theCell) - myPartition.getBoundaryStart(theLevel, theCell);
+        return myMatrices[theLevel - 1][myMatrixOffsets[theLevel - 1][theCell] + theFrom * size + theTo];
+    }
+
+    private void customizeLevel(int theLevel, ForkJoinPool thePool) {
+        int cells = myPartition.getCellCount(theLevel);
+        int largest = 0;
+        for (int c = 0; c < cells; c++) {
+            largest = Math.max(largest, myPartition.getVertexEnd(theLevel, c) - myPartition.getVertexStart(theLevel, c));
+        }
+        int cellSize = largest;
+        ParallelSlices.run(thePool, cells, CELLS_PER_THREAD, (from, to) -> {
+            IndexedHeap heap = new IndexedHeap(cellSize);
+            double[] times = new double[cellSize];
+            int[] prevs = new int[cellSize];
+            for (int c = from; c < to; c++) {
+                customizeCell(theLevel, c, heap, times, prevs);
+            }
+        });
+    }
+
+    // a search inside the cell from each of its boundary intersections, on the cell's vertices by local index
+    private void customizeCell(int theLevel, int theCell, IndexedHeap theHeap, double[] theTimes, int[] thePrevs) {
+        int boundaryStart = myPartition.getBoundaryStart(theLevel, theCell);
+        int boundaryCount = myPartition.getBoundaryEnd(theLevel, theCell) - boundaryStart;
+        double[] matrix = myMatrices[theLevel - 1];
+        int matrixStart = myMatrixOffsets[theLevel - 1][theCell];
+        for (int b = 0; b < boundaryCount; b++) {
+            int source = myPartition.getVertexIndex(theLevel, myPartition.getBoundary(theLevel, boundaryStart + b));
+            searchCell(theLevel, theCell, source, NO_VERTEX, theHeap, theTimes, thePrevs);
+            for (int j = 0; j < boundaryCount; j++) {
+                int target = myPartition.getVertexIndex(theLevel, myPartition.getBoundary(theLevel, boundaryStart + j));
+                matrix[matrixStart + b * boundaryCount + j] = theTimes[target];
+            }
+        }
+    }
+
+    /**
+     * Dijkstra over the vertices of theCell only, by their local index, from theSource until theTarget is settled
+     * (or everything is if it's NO_VERTEX). Level 1 cells go over their own roads, higher ones over the matrices of
+     * the cells below plus the roads from one of those to another, the same graph the matrices of theLevel come from.
+     * thePrevs gets the local index each vertex was reached from.
+     */
+    void searchCell(int theLevel, int theCell, int theSource, int theTarget, IndexedHeap theHeap, double[] theTimes,
+                    int[] thePrevs) {
+        MapPartition partition = myPartition;
+        int vertexStart = partition.getVertexStart(theLevel, theCell);
+        int vertexCount = partition.getVertexEnd(theLevel, theCell) - vertexStart;
+        Arrays.fill(theTimes, 0, vertexCount, INF);
+        theHeap.clear();
+        theTimes[theSource] = 0;
+        thePrevs[theSource] = NO_VERTEX;
+        theHeap.push(theSource, 0);
+        while (!theHeap.isEmpty()) {
+            int local = theHeap.pop();
+            if (local == theTarget) {
+                return;
+            }
+            int node = partition.getVertex(theLevel, vertexStart + local);
+            if (myBlocked[node]) {
+                continue;
+            }
+            double time = theTimes[local];
+            int below = theLevel - 1;
+            if (below > 0) {
+                // through the cell of the level below, then out of it over roads that stay inside this cell. a vertex
+                // reached across that cell already has the fastest way to the rest of it, so only the ones that came
+                // in over a road go across
+                int subcell = partition.getCell(below, node);
+                int prev = thePrevs[local];
+                if (prev == NO_VERTEX || partition.getCell(below, partition.getVertex(theLevel, vertexStart + prev)) != subcell) {
+                    int from = partition.getBoundaryIndex(below, node);
+                    int subStart = partition.getBoundaryStart(below, subcell);
+                    int subEnd = partition.getBoundaryEnd(below, subcell);
+                    for (int j = subStart; j < subEnd; j++) {
+                        double clique = cliqueTime(below, subcell, from, j - subStart);
+                        if (clique != INF) {
+                            relax(theHeap, theTimes, thePrevs, local,
+                                    partition.getVertexIndex(theLevel, partition.getBoundary(below, j)), time + clique);
+                        }
+                    }
+                }
+            }
+            for (int e = myGraph.getEdgeStart(node); e < myGraph.getEdgeEnd(node); e++) {
+                int next = myGraph.getTarget(e);
+                if (partition.getCell(theLevel, next) != theCell
+                        || (below > 0 && partition.getCell(below, next) == partition.getCell(below, node))) {
+                    continue; // leaves the cell, or is already covered by the matrix below
+                }
+                double edge = edgeTime(e);
+                if (edge != INF) {
+                    relax(theHeap, theTimes, thePrevs, local, partition.getVertexIndex(theLevel, next), time + edge);
+                }
+            }
+        }
+    }
+
+    private static void relax(IndexedHeap theHeap, double[] theTimes, int[] thePrevs, int theFrom, int theLocal,
+                              double theTime) {
+        if (theTime < theTimes[theLocal]) {
+            theTimes[theLocal] = theTime;
+            thePrevs[theLocal] = theFrom;
+            theHeap.push(theLocal, theTime);
+        }
+    }
+}
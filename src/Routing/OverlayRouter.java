@@ -0,0 +1,185 @@
+package Routing;
+
+import Map.*;
+
+/**
+ * Route queries on an OverlayMetric. The search runs on the original roads near the start and the end, and
+ * everywhere else jumps across whole cells through their matrices, going to the largest cell that holds neither the
+ * start nor the end. Every jump is unpacked again afterwards with a search inside its cell, one level down at a time.
+ * Routes take the same time Router.computeRoute gives under the metric's simulation and threshold.
+ *
+ * An OverlayRouter keeps its search state between queries, so each thread needs its own.
+ */
+public class OverlayRouter {
+    private final MapPartition myPartition;
+    private final CompactGraph myGraph;
+    private final Intersection[] myIntersections;
+
+    // query state
+    private final SearchState myState;
+    private final int[] myStartCells; // by level - 1, the cells holding the start and the end
+    private final int[] myEndCells;
+    private int mySettledCount;
+
+    // unpacking state, one cell at a time
+    private final IndexedHeap myCellHeap;
+    private final double[] myCellTimes;
+    private final int[] myCellPrevs;
+
+    public OverlayRouter(CityMap theMap, MapPartition thePartition) {
+        if (!thePartition.compareMap(theMap)) {
+            throw new IllegalArgumentException("the partition isn't of this map");
+        }
+        myPartition = thePartition;
+        myGraph = theMap.getCompactGraph();
+        myIntersections = theMap.getAllIntersections();
+        myState = new SearchState(myGraph.getIntersectionCount());
+        myStartCells = new int[thePartition.getLevelCount()];
+        myEndCells = new int[thePartition.getLevelCount()];
+        int largest = 1;
+        for (int level = 1; level <= thePartition.getLevelCount(); level++) {
+            for (int c = 0; c < thePartition.getCellCount(level); c++) {
+                largest = Math.max(largest, thePartition.getVertexEnd(level, c) - thePartition.getVertexStart(level, c));
+            }
+        }
+        myCellHeap = new IndexedHeap(largest);
+        myCellTimes = new double[largest];
+        myCellPrevs = new int[largest];
+    }
+
+    /**
+     * @return null if there's no route under theMetric's threshold, route as a series of intersection IDs otherwise
+     */
+    public Route computeRoute(Intersection theStart, Intersection theEnd, OverlayMetric theMetric) {
+        if (theMetric.getPartition() != myPartition) {
+            throw new IllegalArgumentException("the metric was customized for another partition");
+        }
+        mySettledCount = 0;
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        if (theMetric.isBlocked(start) || theMetric.isBlocked(target)) {
+            return null;
+        }
+        for (int level = 1; level <= myStartCells.length; level++) {
+            myStartCells[level - 1] = myPartition.getCell(level, start);
+            myEndCells[level - 1] = myPartition.getCell(level, target);
+        }
+        SearchState state = myState;
+        IndexedHeap pq = state.getHeap();
+        state.reset();
+        state.setWeight(start, 0, SearchState.NO_NODE);
+        pq.push(start, 0);
+
+        while (!pq.isEmpty()) {
+            int current = pq.pop();
+            state.close(current);
+            mySettledCount++;
+            if (current == target) {
+                return unpack(state.pathTo(target), theMetric);
+            }
+            if (theMetric.isBlocked(current)) {
+                continue;
+            }
+            double currentWeight = state.getWeight(current);
+            int level = queryLevel(current);
+            int prev = state.getPrev(current);
+            // across the cell, current is always one of its boundary intersections here. if it was reached across
+            // the same cell it already has the fastest way to the rest of it
+            if (level > 0 && (prev == SearchState.NO_NODE
+                    || myPartition.getCell(level, prev) != myPartition.getCell(level, current))) {
+                int cell = myPartition.getCell(level, current);
+                int from = myPartition.getBoundaryIndex(level, current);
+                int boundaryStart = myPartition.getBoundaryStart(level, cell);
+                int boundaryEnd = myPartition.getBoundaryEnd(level, cell);
+                for (int j = boundaryStart; j < boundaryEnd; j++) {
+                    double clique = theMetric.cliqueTime(level, cell, from, j - boundaryStart);
+                    if (clique != Double.POSITIVE_INFINITY) {
+                        relax(state, current, myPartition.getBoundary(level, j), currentWeight + clique);
+                    }
+                }
+            }
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                if (level > 0 && myPartition.getCell(level, next) == myPartition.getCell(level, current)) {
+                    continue; // covered by the cell's matrix
+                }
+                double edge = theMetric.edgeTime(e);
+                if (edge != Double.POSITIVE_INFINITY) {
+                    relax(state, current, next, currentWeight + edge);
+                }
+            }
+        }
+        return null;
+    }
+
+    // number of nodes settled by the last query, jumps unpacked afterwards not counted
+    public int getSettledCount() {
+        return mySettledCount;
+    }
+
+    // the highest level where theNode's cell holds neither the start nor the end, 0 if even level 1 holds one
+    private int queryLevel(int theNode) {
+        for (int level = myStartCells.length; level > 0; level--) {
+            int cell = myPartition.getCell(level, theNode);
+            if (cell != myStartCells[level - 1] && cell != myEndCells[level - 1]) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    private void relax(SearchState theState, int theFrom, int theTo, double theWeight) {
+        if (!theState.isClosed(theTo) && theWeight < theState.getWeight(theTo)) {
+            theState.setWeight(theTo, theWeight, theFrom);
+            theState.getHeap().push(theTo, theWeight);
+        }
+    }
+
+    private Route unpack(int[] theOverlayPath, OverlayMetric theMetric) {
+        ContractionHierarchy.IntList path = new ContractionHierarchy.IntList();
+        path.add(theOverlayPath[0]);
+        for (int i = 1; i < theOverlayPath.length; i++) {
+            int from = theOverlayPath[i - 1];
+            int to = theOverlayPath[i];
+            int level = queryLevel(from);
+            if (level > 0 && myPartition.getCell(level, from) == myPartition.getCell(level, to)) {
+                unpackJump(level, myPartition.getCell(level, from), from, to, theMetric, path);
+            } else {
+                path.add(to);
+            }
+        }
+        Intersection[] result = new Intersection[path.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = myIntersections[path.get(i)];
+        }
+        return new Route(result);
+    }
+
+    // appends every intersection after theFrom up to theTo on the fastest way between them inside theCell of theLevel
+    private void unpackJump(int theLevel, int theCell, int theFrom, int theTo, OverlayMetric theMetric,
+                            ContractionHierarchy.IntList thePath) {
+        int source = myPartition.getVertexIndex(theLevel, theFrom);
+        int target = myPartition.getVertexIndex(theLevel, theTo);
+        theMetric.searchCell(theLevel, theCell, source, target, myCellHeap, myCellTimes, myCellPrevs);
+        // the steps are taken out before going down a level, since that search reuses the same arrays
+        int vertexStart = myPartition.getVertexStart(theLevel, theCell);
+        int length = 1;
+        for (int local = target; local != source; local = myCellPrevs[local]) {
+            length++;
+        }
+        int[] steps = new int[length];
+        steps[length - 1] = theTo;
+        for (int local = target, i = length - 2; i >= 0; i--) {
+            local = myCellPrevs[local];
+            steps[i] = myPartition.getVertex(theLevel, vertexStart + local);
+        }
+        for (int i = 1; i < length; i++) {
+            int below = theLevel - 1;
+            if (below > 0 && myPartition.getCell(below, steps[i - 1]) == myPartition.getCell(below, steps[i])) {
+                unpackJump(below, myPartition.getCell(below, steps[i]), steps[i - 1], steps[i], theMetric, thePath);
+            } else {
+                thePath.add(steps[i]);
+            }
+        }
+    }
+}
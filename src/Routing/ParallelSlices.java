@@ -0,0 +1,31 @@
+package Routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// runs independent work items on a ForkJoinPool in contiguous slices, so each slice sets up its scratch state once
+final class ParallelSlices {
+    // the items from theFrom up to theTo, exclusive
+    interface Slice {
+        void run(int theFrom, int theTo);
+    }
+
+    private ParallelSlices() {}
+
+    /**
+     * Splits theCount items into theSlicesPerThread slices for every thread of thePool, or one per item if there are
+     * fewer, and returns once every slice has run. An exception thrown by a slice is rethrown here.
+     */
+    static void run(ForkJoinPool thePool, int theCount, int theSlicesPerThread, Slice theSlice) {
+        int slices = Math.max(1, Math.min(theCount, thePool.getParallelism() * theSlicesPerThread));
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(slices);
+        for (int s = 0; s < slices; s++) {
+            int from = (int) ((long) theCount * s / slices);
+            int to = (int) ((long) theCount * (s + 1) / slices);
+            tasks.add(ForkJoinTask.adapt(() -> theSlice.run(from, to)));
+        }
+        thePool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+}
@@ -0,0 +1,40 @@
+package Routing;
+
+/**
+ * The non-dominated routes between two intersections, ordered from the safest (slowest) to the fastest (riskiest).
+ */
+public class ParetoFrontier {
+    private final Route[] myRoutes;
+    private final double[] myTimes;
+    private final double[] myRisks;
+
+    ParetoFrontier(Route[] theRoutes, double[] theTimes, double[] theRisks) {
+        this.myRoutes = theRoutes;
+        this.myTimes = theTimes;
+        this.myRisks = theRisks;
+    }
+
+    public int size() {
+        return myRoutes.length;
+    }
+
+    public boolean isEmpty() {
+        return myRoutes.length == 0;
+    }
+
+    public Route getRoute(int theIndex) {
+        return myRoutes[theIndex];
+    }
+
+    public Route[] getRoutes() {
+        return myRoutes.clone();
+    }
+
+    public double getTime(int theIndex) {
+        return myTimes[theIndex];
+    } // travel time in minutes under the simulation
+
+    public double getRisk(int theIndex) {
+        return myRisks[theIndex];
+    } // max safety risk along the route, i.e. the lowest threshold the route is allowed under
+}
@@ -0,0 +1,187 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+import java.util.Arrays;
+
+/**
+ * Bicriteria router that finds every non-dominated route between two intersections in a single label-setting
+ * search, trading travel time (SafetyChecker.roadTime) against the max safety risk along the route (the same risk
+ * SafetyChecker.routeSafety reports). Each Route in the frontier is the fastest route at or under its risk, so the
+ * frontier holds exactly the breakpoints of Router.computeRoute(start, end, threshold, sim) as the threshold varies.
+ * Like Router, it reuses its label arrays between queries and is meant for one thread at a time.
+ */
+public class ParetoRouter {
+    private static final int NO_LABEL = -1;
+    private static final int INITIAL_LABELS = 64;
+
+    private final CompactGraph myGraph;
+    private final Intersection[] myIntersections;
+
+    // labels are partial routes (node, time, risk) linked back to the label they were extended from
+    private int[] myLabelNodes = new int[INITIAL_LABELS];
+    private double[] myLabelTimes = new double[INITIAL_LABELS];
+    private double[] myLabelRisks = new double[INITIAL_LABELS];
+    private int[] myLabelParents = new int[INITIAL_LABELS];
+    private int myLabelCount;
+
+    // binary heap of label ids ordered by (time, risk)
+    private int[] myQueue = new int[INITIAL_LABELS];
+    private int myQueueSize;
+
+    // lowest risk of the labels settled at a node, anything riskier that arrives later is dominated
+    private final double[] myBestRisk;
+
+    public ParetoRouter(CityMap theMap) {
+        this.myGraph = theMap.getCompactGraph();
+        this.myIntersections = theMap.getAllIntersections();
+        this.myBestRisk = new double[myGraph.getIntersectionCount()];
+    }
+
+    /**
+     *
+     * @param theStart
+     * @param theEnd
+     * @param theSim
+     * @return the Pareto frontier, ordered from the safest route to the fastest one, empty if the end is unreachable
+     */
+    public ParetoFrontier computeFrontier(Intersection theStart, Intersection theEnd, EnvironmentSimulator theSim) {
+        return computeFrontier(theStart, theEnd, theSim, 0);
+    }
+
+    // computeFrontier when no route is known to be safer than theFloorRisk, from a BottleneckIndex
+    ParetoFrontier computeFrontier(Intersection theStart, Intersection theEnd, EnvironmentSimulator theSim,
+                                   double theFloorRisk) {
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        Arrays.fill(myBestRisk, Double.POSITIVE_INFINITY);
+        myLabelCount = 0;
+        myQueueSize = 0;
+
+        CompiledConditions conditions = theSim.getCompiledConditions();
+        // no route can be safer than its two ends, so reaching the target at that risk ends the search
+        double floorRisk = Math.max(theFloorRisk,
+                Math.max(conditions.getIntersectionRisk(start), conditions.getIntersectionRisk(target)));
+        int[] frontier = new int[4];
+        int frontierSize = 0;
+
+        push(addLabel(start, 0, conditions.getIntersectionRisk(start), NO_LABEL));
+        while (myQueueSize > 0) {
+            int label = pop();
+            int current = myLabelNodes[label];
+            double risk = myLabelRisks[label];
+            // labels pop in time order, so a label is dominated unless it is safer than every label settled here,
+            // and than every route already found to the target
+            if (Router.compareDouble(risk, myBestRisk[current]) != -1
+                    || Router.compareDouble(risk, myBestRisk[target]) != -1) {
+                continue;
+            }
+            myBestRisk[current] = risk;
+            if (current == target) {
+                if (frontierSize == frontier.length) {
+                    frontier = Arrays.copyOf(frontier, frontierSize * 2);
+                }
+                frontier[frontierSize++] = label;
+                if (Router.compareDouble(risk, floorRisk) != 1) {
+                    break;
+                }
+                continue; // going through the target and back can't beat the label we just settled
+            }
+            double time = myLabelTimes[label];
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                int road = myGraph.getRoad(e);
+                double nextRisk = Math.max(risk, Math.max(conditions.getRoadRisk(road), conditions.getIntersectionRisk(next)));
+                if (Router.compareDouble(nextRisk, myBestRisk[next]) != -1) {
+                    continue;
+                }
+                push(addLabel(next, time + conditions.getRoadTime(road), nextRisk, label));
+            }
+        }
+
+        // found fastest first, so flip the order to go from the safest to the fastest route
+        Route[] routes = new Route[frontierSize];
+        double[] times = new double[frontierSize];
+        double[] risks = new double[frontierSize];
+        for (int i = 0; i < frontierSize; i++) {
+            int label = frontier[frontierSize - 1 - i];
+            routes[i] = labelPath(label);
+            times[i] = myLabelTimes[label];
+            risks[i] = myLabelRisks[label];
+        }
+        return new ParetoFrontier(routes, times, risks);
+    }
+
+    private Route labelPath(int theLabel) {
+        int length = 0;
+        for (int label = theLabel; label != NO_LABEL; label = myLabelParents[label]) {
+            length++;
+        }
+        Intersection[] path = new Intersection[length];
+        for (int label = theLabel; label != NO_LABEL; label = myLabelParents[label]) {
+            path[--length] = myIntersections[myLabelNodes[label]];
+        }
+        return new Route(path);
+    }
+
+    private int addLabel(int theNode, double theTime, double theRisk, int theParent) {
+        if (myLabelCount == myLabelNodes.length) {
+            int capacity = myLabelCount * 2;
+            myLabelNodes = Arrays.copyOf(myLabelNodes, capacity);
+            myLabelTimes = Arrays.copyOf(myLabelTimes, capacity);
+            myLabelRisks = Arrays.copyOf(myLabelRisks, capacity);
+            myLabelParents = Arrays.copyOf(myLabelParents, capacity);
+        }
+        myLabelNodes[myLabelCount] = theNode;
+        myLabelTimes[myLabelCount] = theTime;
+        myLabelRisks[myLabelCount] = theRisk;
+        myLabelParents[myLabelCount] = theParent;
+        return myLabelCount++;
+    }
+
+    private boolean before(int theLabel, int theOther) {
+        if (myLabelTimes[theLabel] != myLabelTimes[theOther]) {
+            return myLabelTimes[theLabel] < myLabelTimes[theOther];
+        }
+        return myLabelRisks[theLabel] < myLabelRisks[theOther];
+    }
+
+    private void push(int theLabel) {
+        if (myQueueSize == myQueue.length) {
+            myQueue = Arrays.copyOf(myQueue, myQueueSize * 2);
+        }
+        int pos = myQueueSize++;
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (!before(theLabel, myQueue[parent])) {
+                break;
+            }
+            myQueue[pos] = myQueue[parent];
+            pos = parent;
+        }
+        myQueue[pos] = theLabel;
+    }
+
+    private int pop() {
+        int top = myQueue[0];
+        int last = myQueue[--myQueueSize];
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= myQueueSize) {
+                break;
+            }
+            if (child + 1 < myQueueSize && before(myQueue[child + 1], myQueue[child])) {
+                child++;
+            }
+            if (!before(myQueue[child], last)) {
+                break;
+            }
+            myQueue[pos] = myQueue[child];
+            pos = child;
+        }
+        myQueue[pos] = last;
+        return top;
+    }
+}
@@ -0,0 +1,182 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Meaningfully different routes between two intersections by the plateau method, for Router.computeAlternatives.
+ * One search runs from each end on the Router's search states, and a plateau is a chain of roads the two search
+ * trees agree on. Keeps its arrays between queries like the Router it belongs to, so it's just as single threaded.
+ */
+final class PlateauAlternatives {
+    private static final int CANDIDATES_PER_ROUTE = 20; // plateaus tried for every route asked for, at most
+
+    private final Router myRouter;
+    private final CompactGraph myGraph;
+    private final int[] myBackwardSettled;
+    private final int[] myPlateaus; // first nodes of the plateaus of the last query
+    private final int[] myPlateauStarts; // first node, from the start, of the plateau a node is on
+    private final double[] myPlateauLengths; // minutes, by the first node of the plateau
+    private final int[] myNodeMarks;
+    private final int[] myRoadMarks;
+    private int myMark;
+    private int mySettledCount;
+
+    PlateauAlternatives(Router theRouter, CompactGraph theGraph) {
+        myRouter = theRouter;
+        myGraph = theGraph;
+        int n = theGraph.getIntersectionCount();
+        myBackwardSettled = new int[n];
+        myPlateaus = new int[n];
+        myPlateauStarts = new int[n];
+        myPlateauLengths = new double[n];
+        myNodeMarks = new int[n];
+        myRoadMarks = new int[theGraph.getRoadCount()];
+    }
+
+    /**
+     * Up to theCount routes from theStart to theTarget by node, see Router.computeAlternatives. Both searches are
+     * bounded by theMaxStretch times the fastest time, and plateaus are tried longest first.
+     */
+    Route[] compute(int theStart, int theTarget, double theThreshold, CompiledConditions theConditions, int theCount,
+                    double theMaxOverlap, double theMaxStretch) {
+        SearchState forward = myRouter.getState();
+        SearchState backward = myRouter.getBackwardState();
+        int[] forwardSettled = myRouter.getSettledOrder();
+        int forwardCount = myRouter.settle(forward, forwardSettled, theStart, theTarget, theMaxStretch, theThreshold,
+                theConditions, Double.POSITIVE_INFINITY);
+        mySettledCount = forwardCount;
+        if (theCount <= 0 || !forward.isClosed(theTarget)) {
+            return new Route[0];
+        }
+        double limit = forward.getWeight(theTarget) * theMaxStretch;
+        mySettledCount += myRouter.settle(backward, myBackwardSettled, theTarget, SearchState.NO_NODE, 0,
+                theThreshold, theConditions, limit);
+
+        // in forward settle order a node's parent comes first, so plateaus grow from the start side
+        int plateauCount = 0;
+        for (int i = 0; i < forwardCount; i++) {
+            int node = forwardSettled[i];
+            if (!backward.isClosed(node)) {
+                continue;
+            }
+            int prev = forward.getPrev(node);
+            if (prev != SearchState.NO_NODE && backward.isClosed(prev) && backward.getPrev(prev) == node) {
+                int first = myPlateauStarts[prev];
+                myPlateauStarts[node] = first;
+                myPlateauLengths[first] += forward.getWeight(node) - forward.getWeight(prev);
+            } else {
+                myPlateauStarts[node] = node;
+                myPlateauLengths[node] = 0;
+                myPlateaus[plateauCount++] = node;
+            }
+        }
+        // plateaus with some length whose route is within the limit, longest first
+        int kept = 0;
+        for (int i = 0; i < plateauCount; i++) {
+            int p = myPlateaus[i];
+            if (myPlateauLengths[p] != 0
+                    && Router.compareDouble(forward.getWeight(p) + backward.getWeight(p), limit) != 1) {
+                myPlateaus[kept++] = p;
+            }
+        }
+        double[] negatedLengths = new double[kept];
+        for (int i = 0; i < kept; i++) {
+            negatedLengths[i] = -myPlateauLengths[myPlateaus[i]];
+        }
+        int[] order = BottleneckIndex.sortByWeight(negatedLengths);
+
+        List<int[]> chosen = new ArrayList<>();
+        chosen.add(forward.pathTo(theTarget));
+        int tried = 0;
+        for (int i = 0; i < kept && chosen.size() < theCount; i++) {
+            if (++tried > theCount * CANDIDATES_PER_ROUTE) {
+                break;
+            }
+            int[] path = viaPath(forward, backward, myPlateaus[order[i]]);
+            if (path != null && isDifferent(path, chosen, theThreshold, theConditions, theMaxOverlap)) {
+                chosen.add(path);
+            }
+        }
+        Route[] result = new Route[chosen.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = myRouter.toRoute(chosen.get(i));
+        }
+        return result;
+    }
+
+    // number of intersections settled by both searches of the last query
+    int getSettledCount() {
+        return mySettledCount;
+    }
+
+    // forward tree path to theVia then backward tree path on to the target, null if the two cross
+    private int[] viaPath(SearchState theForward, SearchState theBackward, int theVia) {
+        int[] head = theForward.pathTo(theVia);
+        int length = head.length;
+        for (int node = theBackward.getPrev(theVia); node != SearchState.NO_NODE; node = theBackward.getPrev(node)) {
+            length++;
+        }
+        int[] path = Arrays.copyOf(head, length);
+        int i = head.length;
+        for (int node = theBackward.getPrev(theVia); node != SearchState.NO_NODE; node = theBackward.getPrev(node)) {
+            path[i++] = node;
+        }
+        myMark++;
+        for (int node : path) {
+            if (myNodeMarks[node] == myMark) {
+                return null;
+            }
+            myNodeMarks[node] = myMark;
+        }
+        return path;
+    }
+
+    // whether thePath shares at most theMaxOverlap of its time with every route in theChosen
+    private boolean isDifferent(int[] thePath, List<int[]> theChosen, double theThreshold,
+                                CompiledConditions theConditions, double theMaxOverlap) {
+        double total = 0;
+        for (int i = 1; i < thePath.length; i++) {
+            total += theConditions.getRoadTime(roadBetween(thePath[i - 1], thePath[i], theThreshold, theConditions));
+        }
+        for (int[] other : theChosen) {
+            myMark++;
+            for (int i = 1; i < other.length; i++) {
+                myRoadMarks[roadBetween(other[i - 1], other[i], theThreshold, theConditions)] = myMark;
+            }
+            double shared = 0;
+            for (int i = 1; i < thePath.length; i++) {
+                int road = roadBetween(thePath[i - 1], thePath[i], theThreshold, theConditions);
+                if (myRoadMarks[road] == myMark) {
+                    shared += theConditions.getRoadTime(road);
+                }
+            }
+            if (shared > theMaxOverlap * total) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the road the search takes from theFrom to theTo: of the parallel ones under theThreshold, the first that no
+    // later one beats by more than Router.compareDouble's epsilon, the same one Router's settle keeps
+    private int roadBetween(int theFrom, int theTo, double theThreshold, CompiledConditions theConditions) {
+        int result = -1;
+        for (int e = myGraph.getEdgeStart(theFrom); e < myGraph.getEdgeEnd(theFrom); e++) {
+            int road = myGraph.getRoad(e);
+            if (myGraph.getTarget(e) != theTo
+                    || Router.compareDouble(theConditions.getRoadRisk(road), theThreshold) == 1) {
+                continue;
+            }
+            if (result == -1
+                    || Router.compareDouble(theConditions.getRoadTime(road), theConditions.getRoadTime(result)) == -1) {
+                result = road;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the route of one trip up to date while the vehicle drives it, with D* Lite. The search runs backward from
+ * the end, so the times it has found to the end stay valid as the start moves along, and when conditions change
+ * only the intersections whose time to the end is affected get searched again. Routes take the same time as
+ * Router.computeRoute(start, end, threshold, sim) for the current start and simulation, up to Router's comparison
+ * epsilon (relaxing exactly, a session can find a route a hair faster).
+ *
+ * Like Router, a session is for one thread at a time.
+ */
+public class ReplanningSession {
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    private final CompactGraph myGraph;
+    private final Intersection[] myIntersections;
+    private final double myThreshold;
+    private final int myGoal;
+    private final double myHeuristicScale;
+    private EnvironmentSimulator mySim;
+    private CompiledConditions myConditions;
+
+    // D* Lite state: g is the time to the end as last expanded, rhs the one step lookahead of it
+    private final double[] myG;
+    private final double[] myRhs;
+    private final IndexedHeap myQueue;
+    private int myStart;
+    private int myLastStart; // start when the key offset was last brought up to date
+    private double myKeyOffset; // minutes, how much the heuristic of the queued keys has shrunk since they were computed
+    private boolean myIsStale = true; // whether something changed since the last repair
+    private int myExpandedCount;
+
+    public ReplanningSession(CityMap theMap, Intersection theStart, Intersection theEnd, double theThreshold,
+                             EnvironmentSimulator theSim) {
+        myGraph = theMap.getCompactGraph();
+        myIntersections = theMap.getAllIntersections();
+        myThreshold = theThreshold;
+        myGoal = CompactGraph.toNode(theEnd.getID());
+        myStart = CompactGraph.toNode(theStart.getID());
+        myLastStart = myStart;
+        myHeuristicScale = myGraph.getTimePerMeterBound();
+        mySim = theSim;
+        myConditions = theSim.getCompiledConditions();
+
+        int n = myGraph.getIntersectionCount();
+        myG = new double[n];
+        myRhs = new double[n];
+        Arrays.fill(myG, INF);
+        Arrays.fill(myRhs, INF);
+        myQueue = new IndexedHeap(n, true);
+        myRhs[myGoal] = 0;
+        queue(myGoal);
+    }
+
+    /**
+     * The fastest route from the current start to the end under the current simulation, repairing the search first
+     * if the start or the conditions changed since the last call.
+     * @return null if there's no route under the threshold
+     */
+    public Route getRoute() {
+        if (isBlocked(myStart) || isBlocked(myGoal)) {
+            return null;
+        }
+        if (myIsStale) {
+            repair();
+            myIsStale = false;
+        }
+        if (myG[myStart] == INF) {
+            return null;
+        }
+        int[] path = new int[16];
+        int length = 0;
+        int current = myStart;
+        path[length++] = current;
+        while (current != myGoal) {
+            int next = bestSuccessor(current);
+            if (next == SearchState.NO_NODE || length > myG.length) {
+                return null; // can't happen once repaired, but never loop forever
+            }
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = next;
+            current = next;
+        }
+        Intersection[] route = new Intersection[length];
+        for (int i = 0; i < length; i++) {
+            route[i] = myIntersections[path[i]];
+        }
+        return new Route(route);
+    }
+
+    // the vehicle is now at theIntersection, usually the next one on the route
+    public void moveTo(Intersection theIntersection) {
+        int node = CompactGraph.toNode(theIntersection.getID());
+        if (node == myStart) {
+            return;
+        }
+        myStart = node;
+        myIsStale = true;
+    }
+
+    /**
+     * Switches to theSim, typically a version made from the current one with EnvironmentSimulator.apply, and
+     * marks the roads and intersections whose conditions differ for repair. The repair itself runs on the next
+     * getRoute.
+     */
+    public void updateSimulation(EnvironmentSimulator theSim) {
+        int[] roads = theSim.changedRoads(mySim);
+        int[] intersections = theSim.changedIntersections(mySim);
+        mySim = theSim;
+        myConditions = theSim.getCompiledConditions();
+        if (roads.length == 0 && intersections.length == 0) {
+            return;
+        }
+        // the queued keys were computed from the old start, bring the offset up to date before adding new ones
+        myKeyOffset += heuristic(myLastStart, myStart);
+        myLastStart = myStart;
+        for (int road : roads) {
+            updateVertex(myGraph.getSource(road));
+            updateVertex(myGraph.getDestination(road));
+        }
+        for (int node : intersections) {
+            updateVertex(node);
+            for (int e = myGraph.getEdgeStart(node); e < myGraph.getEdgeEnd(node); e++) {
+                updateVertex(myGraph.getTarget(e));
+            }
+        }
+        myIsStale = true;
+    }
+
+    public Intersection getStart() {
+        return myIntersections[myStart];
+    }
+
+    // intersections expanded by the repairs so far, to see how little of the map a replan touches
+    public int getExpandedCount() {
+        return myExpandedCount;
+    }
+
+    // ComputeShortestPath of D* Lite, with the keys compared as (k1, k2)
+    private void repair() {
+        if (myStart != myLastStart) {
+            myKeyOffset += heuristic(myLastStart, myStart);
+            myLastStart = myStart;
+        }
+        while (!myQueue.isEmpty()) {
+            double startK2 = Math.min(myG[myStart], myRhs[myStart]);
+            double startK1 = startK2 + myKeyOffset; // the heuristic of the start to itself is 0
+            double topK1 = myQueue.peekKey();
+            double topK2 = myQueue.peekSecondaryKey();
+            boolean topIsBefore = topK1 < startK1 || (topK1 == startK1 && topK2 < startK2);
+            if (!topIsBefore && myRhs[myStart] == myG[myStart]) {
+                break;
+            }
+            int u = myQueue.peek();
+            double k2 = Math.min(myG[u], myRhs[u]);
+            double k1 = k2 + heuristic(myStart, u) + myKeyOffset;
+            if (topK1 < k1 || (topK1 == k1 && topK2 < k2)) {
+                myQueue.push(u, k1, k2); // its key got outdated by the start moving
+            } else if (myG[u] > myRhs[u]) {
+                myQueue.pop();
+                myExpandedCount++;
+                myG[u] = myRhs[u];
+                for (int e = myGraph.getEdgeStart(u); e < myGraph.getEdgeEnd(u); e++) {
+                    int pred = myGraph.getTarget(e);
+                    if (pred != myGoal) {
+                        myRhs[pred] = Math.min(myRhs[pred], cost(pred, u, myGraph.getRoad(e)) + myG[u]);
+                    }
+                    updateQueue(pred);
+                }
+            } else {
+                myQueue.pop();
+                myExpandedCount++;
+                myG[u] = INF;
+                updateVertex(u);
+                for (int e = myGraph.getEdgeStart(u); e < myGraph.getEdgeEnd(u); e++) {
+                    updateVertex(myGraph.getTarget(e));
+                }
+            }
+        }
+    }
+
+    // recomputes rhs from the successors and puts the node in the queue if it's inconsistent
+    private void updateVertex(int theNode) {
+        if (theNode != myGoal) {
+            double best = INF;
+            for (int e = myGraph.getEdgeStart(theNode); e < myGraph.getEdgeEnd(theNode); e++) {
+                int next = myGraph.getTarget(e);
+                best = Math.min(best, cost(theNode, next, myGraph.getRoad(e)) + myG[next]);
+            }
+            myRhs[theNode] = best;
+        }
+        updateQueue(theNode);
+    }
+
+    private void updateQueue(int theNode) {
+        if (myG[theNode] != myRhs[theNode]) {
+            queue(theNode);
+        } else {
+            myQueue.remove(theNode);
+        }
+    }
+
+    private void queue(int theNode) {
+        double k2 = Math.min(myG[theNode], myRhs[theNode]);
+        myQueue.push(theNode, k2 + heuristic(myStart, theNode) + myKeyOffset, k2);
+    }
+
+    private int bestSuccessor(int theNode) {
+        int best = SearchState.NO_NODE;
+        double bestTotal = INF;
+        for (int e = myGraph.getEdgeStart(theNode); e < myGraph.getEdgeEnd(theNode); e++) {
+            int next = myGraph.getTarget(e);
+            double total = cost(theNode, next, myGraph.getRoad(e)) + myG[next];
+            if (total < bestTotal) {
+                best = next;
+                bestTotal = total;
+            }
+        }
+        return best;
+    }
+
+    // roads and intersections over the threshold can't be driven through, the same pruning Router does
+    private double cost(int theFrom, int theTo, int theRoad) {
+        if (Router.compareDouble(myConditions.getRoadRisk(theRoad), myThreshold) == 1
+                || isBlocked(theFrom) || isBlocked(theTo)) {
+            return INF;
+        }
+        return myConditions.getRoadTime(theRoad);
+    }
+
+    private boolean isBlocked(int theNode) {
+        return Router.compareDouble(myConditions.getIntersectionRisk(theNode), myThreshold) == 1;
+    }
+
+    private double heuristic(int theNode, int theOther) {
+        return myHeuristicScale * myGraph.distance(theNode, theOther);
+    }
+}
@@ -23,6 +23,10 @@ public class Route {
         return myIntersections.clone();
     }
 
+    int size() {
+        return myIntersections.length;
+    } // intersections on the route
+
     public int[] getRouteIDs() {
         int[] result = new int[myIntersections.length];
         for (int i = 0; i < myIntersections.length; i++) {
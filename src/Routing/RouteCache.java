@@ -0,0 +1,139 @@
+package Routing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Segmented LRU cache of getBestRoutes results. New entries go into a probation segment and move to the protected
+ * segment on their second hit, so the few location pairs asked for over and over stay cached while one-off queries
+ * only churn the probation segment. Bounded both by entry count and by weight, the number of intersections held
+ * by the cached routes. All methods are synchronized so batch workers can share it.
+ */
+final class RouteCache {
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final int myMaxEntries;
+    private final long myMaxWeight;
+    private final int myMaxProtected;
+    // both in access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Route[]> myProbation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Route[]> myProtected = new LinkedHashMap<>(16, 0.75f, true);
+    private long myWeight;
+    private long myHits;
+    private long myMisses;
+    private long myEvictions;
+
+    RouteCache(int theMaxEntries, long theMaxWeight) {
+        this.myMaxEntries = theMaxEntries;
+        this.myMaxWeight = theMaxWeight;
+        this.myMaxProtected = (int) (theMaxEntries * PROTECTED_SHARE);
+    }
+
+    // the cached routes of theKey, or null on a miss. a cached null result comes back as an empty array
+    synchronized Route[] get(Key theKey) {
+        Route[] result = myProtected.get(theKey);
+        if (result == null) {
+            result = myProbation.remove(theKey);
+            if (result == null) {
+                myMisses++;
+                return null;
+            }
+            myProtected.put(theKey, result); // second hit, promote it
+            demoteProtected();
+        }
+        myHits++;
+        return result;
+    }
+
+    synchronized void put(Key theKey, Route[] theRoutes) {
+        long weight = weightOf(theRoutes);
+        if (myMaxEntries == 0 || weight > myMaxWeight) {
+            return;
+        }
+        Route[] old = myProtected.containsKey(theKey) ? myProtected.put(theKey, theRoutes) : myProbation.put(theKey, theRoutes);
+        if (old != null) {
+            myWeight -= weightOf(old);
+        }
+        myWeight += weight;
+        while (myProbation.size() + myProtected.size() > myMaxEntries || myWeight > myMaxWeight) {
+            // evict from probation first, and only touch the protected entries once probation is empty
+            evictEldest(myProbation.isEmpty() ? myProtected : myProbation);
+            myEvictions++;
+        }
+    }
+
+    synchronized void clear() {
+        myProbation.clear();
+        myProtected.clear();
+        myWeight = 0;
+    }
+
+    synchronized CacheStats getStats() {
+        return new CacheStats(myHits, myMisses, myEvictions, myProbation.size() + myProtected.size(), myWeight);
+    }
+
+    // moves the least recently used protected entries back to probation, where they get one more chance
+    private void demoteProtected() {
+        while (myProtected.size() > myMaxProtected) {
+            Iterator<Map.Entry<Key, Route[]>> eldest = myProtected.entrySet().iterator();
+            Map.Entry<Key, Route[]> entry = eldest.next();
+            eldest.remove();
+            myProbation.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void evictEldest(LinkedHashMap<Key, Route[]> theSegment) {
+        Iterator<Map.Entry<Key, Route[]>> eldest = theSegment.entrySet().iterator();
+        myWeight -= weightOf(eldest.next().getValue());
+        eldest.remove();
+    }
+
+    private static long weightOf(Route[] theRoutes) {
+        long weight = 1;
+        for (Route r : theRoutes) {
+            weight += r.size();
+        }
+        return weight;
+    }
+
+    // one getBestRoutes query on one simulation
+    static final class Key {
+        private final int myStart;
+        private final int myEnd;
+        private final double myRate;
+        private final int myLimiter;
+        private final double myThreshold;
+        private final long mySimVersion;
+
+        Key(int theStart, int theEnd, double theRate, int theLimiter, double theThreshold, long theSimVersion) {
+            this.myStart = theStart;
+            this.myEnd = theEnd;
+            this.myRate = theRate;
+            this.myLimiter = theLimiter;
+            this.myThreshold = theThreshold;
+            this.mySimVersion = theSimVersion;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key other)) {
+                return false;
+            }
+            return myStart == other.myStart && myEnd == other.myEnd && myLimiter == other.myLimiter
+                    && Double.compare(myRate, other.myRate) == 0 && Double.compare(myThreshold, other.myThreshold) == 0
+                    && mySimVersion == other.mySimVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = myStart;
+            result = 31 * result + myEnd;
+            result = 31 * result + Double.hashCode(myRate);
+            result = 31 * result + myLimiter;
+            result = 31 * result + Double.hashCode(myThreshold);
+            result = 31 * result + Long.hashCode(mySimVersion);
+            return result;
+        }
+    }
+}
@@ -3,61 +3,269 @@ package Routing;
 import Map.CityMap;
 import Map.Intersection;
 import Map.Road;
+import Simulation.CompiledConditions;
 import Simulation.EnvironmentSimulator;
-import Simulation.SafetyChecker;
+import Simulation.TimeDependentConditions;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * The single query methods share one set of search state and must be called from one thread at a time.
+ * computeRoutes is safe to call from any thread: every worker borrows its own ParetoRouter, and the CityMap and
+ * EnvironmentSimulator they all read are never modified after construction.
+ */
 public class RouteManager {
+    private static final int BATCH_SLICE = 32; // queries per task, so a task's search state is reused a while
+    public static final int DEFAULT_CACHE_ENTRIES = 10_000;
+    public static final long DEFAULT_CACHE_WEIGHT = 2_000_000; // intersections over all cached routes
+    public static final double DEFAULT_MAX_OVERLAP = 0.5; // share of an alternative's time spent on an earlier one
+    public static final double DEFAULT_MAX_STRETCH = 1.3; // how much slower than the fastest route an alternative can be
+    private static final int OVERLAY_THRESHOLDS = 4; // overlay metrics kept, one per threshold
+
     private final Router myRouter;
-    private EnvironmentSimulator mySim;
+    private final ParetoRouter myParetoRouter;
+    private ContractionHierarchy myHierarchy; // built on the first getFastestRoute call, see there for why
+    private Landmarks myLandmarks; // built on the first ALT query, then kept across simulations
+    private volatile BottleneckIndex myBottleneck; // of the last simulation a query needed one for
+    private MapPartition myPartition; // built on the first overlay query, then kept across simulations
+    private OverlayRouter myOverlayRouter;
+    // by threshold, the overlay metrics of the last few thresholds queried, least recently used first
+    private final LinkedHashMap<Double, OverlayMetric> myOverlays = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Double, OverlayMetric> theEldest) {
+            return size() > OVERLAY_THRESHOLDS;
+        }
+    };
+    private volatile EnvironmentSimulator mySim;
     private final CityMap myMap;
+    private final ConcurrentLinkedQueue<ParetoRouter> myIdleRouters = new ConcurrentLinkedQueue<>(); // for batches
+    private final RouteCache myCache;
 
     public RouteManager(CityMap theMap, EnvironmentSimulator theSim) {
+        this(theMap, theSim, DEFAULT_CACHE_ENTRIES, DEFAULT_CACHE_WEIGHT);
+    }
+
+    /**
+     * @param theCacheEntries most getBestRoutes results kept in the cache, 0 turns the cache off
+     * @param theCacheWeight most intersections the cached routes may hold in total
+     */
+    public RouteManager(CityMap theMap, EnvironmentSimulator theSim, int theCacheEntries, long theCacheWeight) {
         this.myMap = theMap;
         this.myRouter = new Router(theMap);
+        this.myParetoRouter = new ParetoRouter(theMap);
         this.mySim = theSim;
+        this.myCache = new RouteCache(theCacheEntries, theCacheWeight);
     }
 
     public void setSimulation(EnvironmentSimulator theSim) {
         this.mySim = theSim;
+        myCache.clear();
+        myOverlays.clear();
     }
 
-    public Route[] getBestRoutes(Intersection theStart, Intersection theEnd, double theRate, int rateLimiter) {
-        ArrayList<Route> results = new ArrayList<>();
-        // starting with a negative because we'll increment at the start in case threshold goes over 1.0
-        double threshold = 0-theRate;
-        Route prevRoute = null;
-        while (results.size() <= rateLimiter && threshold < 1.0) {
-            threshold += theRate;
-            Route theResult = myRouter.computeRoute(theStart, theEnd, threshold, mySim);
-            if (theResult != null && !theResult.equals(prevRoute)) {
-                prevRoute = theResult;
-                results.add(theResult);
+    // drops every cached result, the entries are keyed by simulation version so this only frees their memory
+    public void invalidateCache() {
+        myCache.clear();
+    }
+
+    public CacheStats getCacheStats() {
+        return myCache.getStats();
+    }
+
+    // computeRoutes on the common fork-join pool
+    public Route[][] computeRoutes(List<OdPair> thePairs, double theRate, int rateLimiter) {
+        return computeRoutes(thePairs, theRate, rateLimiter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs getBestRoutes(start, end, theRate, rateLimiter) for every pair on theExecutor, which can be a
+     * ForkJoinPool, a virtual thread per task executor or anything else. The pairs are split into slices, and each
+     * slice runs on a ParetoRouter nobody else is using, taken from a pool that grows to the number of slices that
+     * ever ran at once. Every query of the batch sees the simulation that was active when the batch started.
+     * @return the routes of every pair, in the order of thePairs
+     */
+    public Route[][] computeRoutes(List<OdPair> thePairs, double theRate, int rateLimiter, Executor theExecutor) {
+        EnvironmentSimulator sim = mySim;
+        OdPair[] pairs = thePairs.toArray(new OdPair[0]);
+        Route[][] results = new Route[pairs.length][];
+        int slices = (pairs.length + BATCH_SLICE - 1) / BATCH_SLICE;
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[slices];
+        for (int s = 0; s < slices; s++) {
+            int from = s * BATCH_SLICE;
+            int to = Math.min(pairs.length, from + BATCH_SLICE);
+            tasks[s] = CompletableFuture.runAsync(() -> {
+                ParetoRouter router = myIdleRouters.poll();
+                if (router == null) {
+                    router = new ParetoRouter(myMap);
+                }
+                try {
+                    for (int i = from; i < to; i++) {
+                        results[i] = cachedRoutes(router, pairs[i].getStart(), pairs[i].getEnd(), sim, theRate,
+                                rateLimiter, 1.0);
+                    }
+                } finally {
+                    myIdleRouters.offer(router);
+                }
+            }, theExecutor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw e;
         }
-        return results.toArray(new Route[0]);
+        return results;
     }
 
+    /**
+     * Returns the breakpoints of the time vs. risk trade-off from the safest route to the fastest, all found in one
+     * bicriteria search. Routes whose risks are within theRate of the first route of their group are merged, keeping
+     * the fastest of the group, and at most rateLimiter + 1 routes are returned.
+     */
+    public Route[] getBestRoutes(Intersection theStart, Intersection theEnd, double theRate, int rateLimiter) {
+        return cachedRoutes(myParetoRouter, theStart, theEnd, mySim, theRate, rateLimiter, 1.0);
+    }
+
+    // same as above, but only routes with a risk up to minThreshold are returned, or null if there are none
     public Route[] getBestRoutes(Intersection theStart, Intersection theEnd, double theRate, int rateLimiter, double minThreshold) {
-        ArrayList<Route> results = new ArrayList<>();
-        double threshold = 0-theRate;
-        Route prevRoute = null;
-        while (results.size() <= rateLimiter && threshold < minThreshold) {
-            threshold += theRate;
-            Route theResult = myRouter.computeRoute(theStart, theEnd, threshold, mySim);
-            if (theResult != null && !theResult.equals(prevRoute)) {
-                prevRoute = theResult;
-                results.add(theResult);
+        Route[] results = cachedRoutes(myParetoRouter, theStart, theEnd, mySim, theRate, rateLimiter, minThreshold);
+        if (results.length == 0) {
+            return null;
+        }
+        return results;
+    }
+
+    // answers from the cache when the same query already ran on this simulation, callers get their own array
+    private Route[] cachedRoutes(ParetoRouter theRouter, Intersection theStart, Intersection theEnd,
+                                 EnvironmentSimulator theSim, double theRate, int rateLimiter, double theMaxRisk) {
+        RouteCache.Key key = new RouteCache.Key(theStart.getID(), theEnd.getID(), theRate, rateLimiter, theMaxRisk,
+                theSim.getVersion());
+        Route[] results = myCache.get(key);
+        if (results == null) {
+            // no route is safer than the bottleneck, so over theMaxRisk there's nothing to search for
+            double floorRisk = bottleneckIndex(theSim).getBottleneck(theStart, theEnd);
+            if (Router.compareDouble(floorRisk, theMaxRisk) == 1) {
+                results = new Route[0];
+            } else {
+                results = frontierRoutes(theRouter.computeFrontier(theStart, theEnd, theSim, floorRisk), theRate,
+                        rateLimiter, theMaxRisk);
             }
+            myCache.put(key, results);
+        }
+        return results.clone();
+    }
+
+    /**
+     * Fastest route by default road times, ignoring the simulation. Answered by the map's Contraction Hierarchy,
+     * which is preprocessed on the first call and reused for every later one. Preprocessing takes 0.7 s on a grid
+     * of 10,000 intersections and 4 s on one of 90,000, so the first call waits that long. It's left lazy on purpose:
+     * Model never asks for these routes, and building it when the map loads would put that cost on every map load
+     * and every RouteManager made for a batch or a benchmark.
+     * @return null if we cannot compute route
+     */
+    public Route getFastestRoute(Intersection theStart, Intersection theEnd) {
+        if (myHierarchy == null) {
+            myHierarchy = new ContractionHierarchy(myMap);
         }
-        if (results.isEmpty()) {
+        return myHierarchy.computeRoute(theStart, theEnd);
+    }
+
+    /**
+     * Fastest route under the current simulation that stays within theThreshold, found with ALT. The landmarks are
+     * computed on the first call and stay valid when setSimulation swaps in a new simulation.
+     * @return null if there's no route under the threshold
+     */
+    public Route getSafeRoute(Intersection theStart, Intersection theEnd, double theThreshold) {
+        if (!bottleneckIndex(mySim).isConnected(theStart, theEnd, theThreshold)) {
             return null;
         }
+        if (myLandmarks == null) {
+            myLandmarks = new Landmarks(myMap);
+        }
+        return myRouter.computeRouteALT(theStart, theEnd, theThreshold, mySim, myLandmarks);
+    }
+
+    /**
+     * Same route as getSafeRoute, answered on the map's partition instead. The partition is built on the first call,
+     * and each threshold needs its cells customized for it, which takes around 2 to 3 seconds on a grid of 90,000
+     * intersections. The metrics of the last few thresholds are kept until the simulation changes, so this pays off
+     * when many queries share a simulation and a handful of thresholds.
+     * @return null if there's no route under the threshold
+     */
+    public Route getOverlayRoute(Intersection theStart, Intersection theEnd, double theThreshold) {
+        if (myPartition == null) {
+            myPartition = new MapPartition(myMap);
+            myOverlayRouter = new OverlayRouter(myMap, myPartition);
+        }
+        OverlayMetric metric = myOverlays.get(theThreshold);
+        if (metric == null || !metric.isFor(mySim, theThreshold)) {
+            metric = OverlayMetric.customize(myPartition, mySim, theThreshold);
+            myOverlays.put(theThreshold, metric);
+        }
+        return myOverlayRouter.computeRoute(theStart, theEnd, metric);
+    }
+
+    // the lowest threshold getSafeRoute finds a route at, infinite if the two aren't connected
+    public double getMinimumThreshold(Intersection theStart, Intersection theEnd) {
+        return bottleneckIndex(mySim).getBottleneck(theStart, theEnd);
+    }
+
+    // built on the first query of every simulation version. batch workers may race to build the same one, which
+    // only costs the extra build
+    private BottleneckIndex bottleneckIndex(EnvironmentSimulator theSim) {
+        BottleneckIndex index = myBottleneck;
+        if (index == null || !index.isFor(theSim)) {
+            index = new BottleneckIndex(myMap, theSim);
+            myBottleneck = index;
+        }
+        return index;
+    }
+
+    public ParetoFrontier getParetoFrontier(Intersection theStart, Intersection theEnd) {
+        return myParetoRouter.computeFrontier(theStart, theEnd, mySim);
+    }
+
+    private Route[] frontierRoutes(ParetoFrontier theFrontier, double theRate, int rateLimiter, double theMaxRisk) {
+        ArrayList<Route> results = new ArrayList<>();
+        double groupRisk = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < theFrontier.size(); i++) {
+            double risk = theFrontier.getRisk(i);
+            if (Router.compareDouble(risk, theMaxRisk) == 1) {
+                break;
+            }
+            if (!results.isEmpty() && risk - groupRisk < theRate) {
+                results.set(results.size() - 1, theFrontier.getRoute(i)); // the faster route of the same group
+                continue;
+            }
+            if (results.size() > rateLimiter) {
+                break;
+            }
+            groupRisk = risk;
+            results.add(theFrontier.getRoute(i));
+        }
         return results.toArray(new Route[0]);
     }
 
 
+    /**
+     * Up to theCount different routes under theThreshold, the fastest first, see Router.computeAlternatives. Unlike
+     * getBestRoutes the routes differ in the roads they take, not only in how safe they are.
+     */
+    public Route[] getAlternativeRoutes(Intersection theStart, Intersection theEnd, int theCount, double theThreshold) {
+        return myRouter.computeAlternatives(theStart, theEnd, theThreshold, mySim, theCount, DEFAULT_MAX_OVERLAP,
+                DEFAULT_MAX_STRETCH);
+    }
+
     public double routeLength(Route theRoute) {
         double result = 0;
         int[] routePath = theRoute.getRouteIDs();
@@ -74,13 +282,25 @@ public class RouteManager {
 
     public double routeLength(Route theRoute, EnvironmentSimulator theSim) {
         double result = 0;
+        CompiledConditions conditions = theSim.getCompiledConditions();
         int[] routePath = theRoute.getRouteIDs();
         for (int i = 1; i < routePath.length; i++) {
             Road r = CityMap.getRoad(myMap.getIntersection(routePath[i-1]), myMap.getIntersection(routePath[i]));
-            double time = SafetyChecker.roadTime(r, theSim);
+            double time = conditions.getRoadTime(r.getID());
             result += time;
         }
         return (double) Math.round(result*100)/100;
     }
 
+    // minutes theRoute takes leaving at theDepartureTime, each road timed for when the route gets to it
+    public double routeLength(Route theRoute, TimeDependentConditions theConditions, double theDepartureTime) {
+        double time = theDepartureTime;
+        int[] routePath = theRoute.getRouteIDs();
+        for (int i = 1; i < routePath.length; i++) {
+            Road r = CityMap.getRoad(myMap.getIntersection(routePath[i-1]), myMap.getIntersection(routePath[i]));
+            time = theConditions.getArrivalTime(r.getID(), time);
+        }
+        return (double) Math.round((time - theDepartureTime)*100)/100;
+    }
+
 }
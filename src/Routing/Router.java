@@ -1,15 +1,29 @@
 package Routing;
 
-import java.util.*;
 import Map.*;
 import Simulation.*;
 
+/**
+ * Point to point searches over a CityMap's CompactGraph. A Router keeps its search state between queries, so it
+ * must only be used by one thread at a time, while any number of Routers can share the same map and simulation.
+ */
 public class Router {
-    CityMap myMap;
     private static final double DOUBLE_EPSILON = 0.0005;
 
+    CityMap myMap;
+    private final CompactGraph myGraph;
+    private final Intersection[] myIntersections;
+    private final SearchState myState;
+    private SearchState myBackwardState; // only allocated once a bidirectional search runs
+    private int[] mySettled; // nodes in the order the last one-to-all search settled them
+    private PlateauAlternatives myAlternatives; // only allocated once alternatives are asked for
+    private int mySettledCount;
+
     public Router(CityMap theMap) {
         this.myMap = theMap;
+        this.myGraph = theMap.getCompactGraph();
+        this.myIntersections = theMap.getAllIntersections();
+        this.myState = new SearchState(myGraph.getIntersectionCount());
     }
 
     /**
@@ -19,185 +33,399 @@ public class Router {
      * @return null if we cannot compute route, route as a series of intersection IDs
      */
     public Route computeRoute(Intersection theStart, Intersection theEnd) {
+        return search(theStart, theEnd, 0, null, false, null);
+    }
 
-        // initialize our necessary data structures
-        PriorityQueue<ComparableIntersection> pq = new PriorityQueue<>(); // for adding new nodes
-        HashMap<Intersection, ComparableIntersection> seenNode = new HashMap<>(); // also for adding new nodes
-        HashSet<ComparableIntersection> closedNode = new HashSet<>();
-
-        ComparableIntersection current = new ComparableIntersection(theStart, 0, null);
-        pq.add(current);
-
-        while (!pq.isEmpty()) {
-            current = pq.poll();
-            if (current.getIntersection().equals(theEnd)) { // terminating case if we pop off the target
-                return iterateIntersectionPath(current);
-            } // if we didn't land the target node, proceed as usual:
+    public Route computeRoute(Intersection theStart, Intersection theEnd,
+                              double theThreshold, EnvironmentSimulator theSim) {
+        return search(theStart, theEnd, theThreshold, theSim, false, null);
+    }
 
-            // compute through the neighbors, calculating distance for unvisited neighbors
-            for (Road r : current.getIntersection().getRoadList()) { // get the intersections this is connected to
-                Intersection nonOriginNode = getNonOriginNode(r, current.getIntersection());
+    /**
+     * A* version of computeRoute(theStart, theEnd). The straight-line distance between the intersection positions
+     * times CompactGraph.getTimePerMeterBound() never overestimates the remaining time, so the route is still optimal.
+     */
+    public Route computeRouteAStar(Intersection theStart, Intersection theEnd) {
+        return search(theStart, theEnd, 0, null, true, null);
+    }
 
+    // A* version of computeRoute(theStart, theEnd, theThreshold, theSim), the bound holds since conditions only slow roads down
+    public Route computeRouteAStar(Intersection theStart, Intersection theEnd,
+                                   double theThreshold, EnvironmentSimulator theSim) {
+        return search(theStart, theEnd, theThreshold, theSim, true, null);
+    }
 
-                double pathTotal = pathWeight(current, r.getDefaultTime()); //compute the weight of path
+    /**
+     * ALT version of computeRoute(theStart, theEnd, theThreshold, theSim). The landmark bounds are taken on default
+     * times, so the same Landmarks keep working for every simulation loaded on this map.
+     */
+    public Route computeRouteALT(Intersection theStart, Intersection theEnd, double theThreshold,
+                                 EnvironmentSimulator theSim, Landmarks theLandmarks) {
+        return search(theStart, theEnd, theThreshold, theSim, true, theLandmarks);
+    }
 
-                if (seenNode.containsKey(nonOriginNode)) { // check if we've already set the weight of this node
-                    if (!closedNode.contains(seenNode.get(nonOriginNode))) { // if it's an already closed node, ignore
-                        setPathWeight(pathTotal, nonOriginNode, current, pq, seenNode);
-                    } else {
-                        continue; // continue to next iteration if we're computing an already visited node
-                    }
+    /**
+     * Bidirectional version of computeRoute(theStart, theEnd, theThreshold, theSim). Roads are undirected and their
+     * conditions symmetric, so a backward search from the end runs on the same graph and the two meet in the middle.
+     * The search stops once the smallest keys of both queues add up to at least the best route seen so far.
+     * @return null if there's no route under the threshold, route as a series of intersection IDs otherwise
+     */
+    public Route computeRouteBidirectional(Intersection theStart, Intersection theEnd,
+                                           double theThreshold, EnvironmentSimulator theSim) {
+        mySettledCount = 0;
+        CompiledConditions conditions = theSim.getCompiledConditions();
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        if (compareDouble(conditions.getIntersectionRisk(start), theThreshold) == 1) {
+            return null;
+        } else if (compareDouble(conditions.getIntersectionRisk(target), theThreshold) == 1) {
+            return null;
+        }
+        if (start == target) {
+            return toRoute(new int[] {start});
+        }
+        SearchState forward = myState;
+        SearchState backward = getBackwardState();
+        forward.reset();
+        backward.reset();
+        forward.setWeight(start, 0, SearchState.NO_NODE);
+        forward.getHeap().push(start, 0);
+        backward.setWeight(target, 0, SearchState.NO_NODE);
+        backward.getHeap().push(target, 0);
+
+        double bestTotal = Double.POSITIVE_INFINITY;
+        int meetForward = SearchState.NO_NODE; // best route found so far is start..meetForward-meetBackward..end
+        int meetBackward = SearchState.NO_NODE;
+
+        while (!forward.getHeap().isEmpty() && !backward.getHeap().isEmpty()) {
+            if (forward.getHeap().peekKey() + backward.getHeap().peekKey() >= bestTotal) {
+                break; // no unsettled node can be on a shorter route
+            }
+            boolean isForward = forward.getHeap().peekKey() <= backward.getHeap().peekKey();
+            SearchState state = isForward ? forward : backward;
+            SearchState other = isForward ? backward : forward;
+            int current = state.getHeap().pop();
+            state.close(current);
+            mySettledCount++;
+            double currentWeight = state.getWeight(current);
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                if (state.isClosed(next)) {
+                    continue;
+                }
+                int road = myGraph.getRoad(e);
+                if (compareDouble(conditions.getRoadRisk(road), theThreshold) == 1) { // skip if road is over the safety threshold
+                    continue;
+                }
+                // intersections over the threshold never get expanded, so don't queue them at all
+                if (compareDouble(conditions.getIntersectionRisk(next), theThreshold) == 1) {
+                    continue;
+                }
+                double pathTotal = currentWeight + conditions.getRoadTime(road);
+                if (!state.isSeen(next) || compareDouble(pathTotal, state.getWeight(next)) == -1) {
+                    state.setWeight(next, pathTotal, current);
+                    state.getHeap().push(next, pathTotal);
+                }
+                if (other.isSeen(next) && pathTotal + other.getWeight(next) < bestTotal) { // the two searches touch
+                    bestTotal = pathTotal + other.getWeight(next);
+                    meetForward = isForward ? current : next;
+                    meetBackward = isForward ? next : current;
                 }
-                // since this is a never-visited node, we'll add it to the queue along with it's data.
-                putNode(pathTotal, nonOriginNode, current, pq, seenNode);
             }
-            // mark current node as visited, then after reiteration we'll run through the next shortest node
-            closedNode.add(current);
         }
-        return null;
-    }
-
-    public Route computeRoute(Intersection theStart, Intersection theEnd,
-                              double theThreshold, EnvironmentSimulator theSim) {
-
-        PriorityQueue<ComparableIntersection> pq = new PriorityQueue<>(); // for adding new nodes
-        HashMap<Intersection, ComparableIntersection> seenNode = new HashMap<>(); // also for adding new nodes
-        HashSet<ComparableIntersection> closedNode = new HashSet<>();
-
-        if (compareDouble(SafetyChecker.safetyRisk(theStart, theSim), theThreshold) == 1) {
-            return null;
-        } else if (compareDouble(SafetyChecker.safetyRisk(theEnd, theSim), theThreshold) == 1) {
+        if (meetForward == SearchState.NO_NODE) {
             return null;
         }
-        ComparableIntersection current = new ComparableIntersection(theStart, 0, null);
-        pq.add(current);
+        int[] head = forward.pathTo(meetForward);
+        int[] tail = backward.pathTo(meetBackward);
+        int[] path = new int[head.length + tail.length];
+        System.arraycopy(head, 0, path, 0, head.length);
+        for (int i = 0; i < tail.length; i++) { // the backward path runs end..meetBackward, so flip it
+            path[head.length + i] = tail[tail.length - 1 - i];
+        }
+        return toRoute(path);
+    }
+
+    /**
+     * Time-dependent Dijkstra: the fastest route leaving theStart at theDepartureTime (minutes, on the same clock as
+     * the snapshot times of theConditions), where every road takes the time its profile gives for the moment the
+     * route gets to it. The profiles are FIFO, so the earliest arrival at an intersection is always the best one to
+     * continue from and one pass is enough. Risks aren't FIFO though, so roads and intersections are pruned by their
+     * peak risk over the day instead of their risk at the moment the route gets there: the map left is the same
+     * whenever you arrive, and the route is never over theThreshold whatever the departure time.
+     * @return null if there's no route under the threshold, route as a series of intersection IDs otherwise
+     */
+    public Route computeRoute(Intersection theStart, Intersection theEnd, double theThreshold,
+                              TimeDependentConditions theConditions, double theDepartureTime) {
+        mySettledCount = 0;
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        SearchState state = myState;
+        IndexedHeap pq = state.getHeap();
+        state.reset();
+
+        // weights are arrival times rather than durations
+        state.setWeight(start, theDepartureTime, SearchState.NO_NODE);
+        pq.push(start, theDepartureTime);
 
         while (!pq.isEmpty()) {
-            current = pq.poll();
-            if (compareDouble(SafetyChecker.safetyRisk(current.getIntersection(), theSim), theThreshold) == 1) {
-                closedNode.add(current);
+            int current = pq.pop();
+            state.close(current);
+            mySettledCount++;
+            double arrival = state.getWeight(current);
+            if (compareDouble(theConditions.getPeakIntersectionRisk(current), theThreshold) == 1) {
                 continue;
             }
-            if (current.getIntersection().equals(theEnd)) { // terminating case if we pop off the target
-                return iterateIntersectionPath(current);
-            } // if we didn't land the target node, proceed as usual
-
-//             random print section for debugging
-//            System.out.println("Current: " + current.getIntersection().getID());
-//            System.out.print("[");
-//            for (ComparableIntersection cn : pq) {
-//                System.out.print(cn.getIntersection().getID() + " (" + cn.myPathWeight + "), ");
-//            }
-//            System.out.print("]\n");
-
-            // compute through the neighbors, calculating distance for unvisited neighbors
-            for (Road r : current.getIntersection().getRoadList()) { // get the intersections this is connected to
-                Intersection nonOriginNode = getNonOriginNode(r, current.getIntersection());
-
-                double pathTotal = pathWeight(current, r, theSim); //compute the weight of path
-
-                if (compareDouble(SafetyChecker.safetyRisk(r, theSim), theThreshold) == 1) { // skip if road is over the safety threshold
+            if (current == target) {
+                return toRoute(state.pathTo(target));
+            }
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                if (state.isClosed(next)) {
                     continue;
                 }
-
-                if (seenNode.containsKey(nonOriginNode)) { // check if we've already set the weight of this node
-                    if (!closedNode.contains(seenNode.get(nonOriginNode))) { // if it's an already closed node, ignore
-                        setPathWeight(pathTotal, nonOriginNode, current, pq, seenNode);
-                    }
+                int road = myGraph.getRoad(e);
+                if (compareDouble(theConditions.getPeakRoadRisk(road), theThreshold) == 1) {
                     continue;
                 }
-                // since this is a never-visited node, we'll add it to the queue along with it's data.
-                putNode(pathTotal, nonOriginNode, current, pq, seenNode);
+                double nextArrival = theConditions.getArrivalTime(road, arrival);
+                if (!state.isSeen(next) || compareDouble(nextArrival, state.getWeight(next)) == -1) {
+                    state.setWeight(next, nextArrival, current);
+                    pq.push(next, nextArrival);
+                }
             }
-            // mark current node as visited, then after reiteration we'll run through the next shortest node
-            closedNode.add(current);
         }
-
         return null;
     }
 
-    // returns 1 if num1 > num2, -1 if num1 < num2, and 0 if equal
-    private int compareDouble(double num1, double num2) {
-        if (Math.abs(num1 - num2) < DOUBLE_EPSILON) {
-            return 0;
+    /**
+     * One-to-all version of computeRoute(theStart, theEnd, theThreshold, theSim): the fastest routes from theStart
+     * to every intersection it can reach without going over theThreshold.
+     */
+    public ShortestPathTree computeTree(Intersection theStart, double theThreshold, EnvironmentSimulator theSim) {
+        return computeTree(theStart, theThreshold, theSim, Double.POSITIVE_INFINITY);
+    }
+
+    // computeTree, stopping once every intersection within theTimeLimit minutes has been reached
+    public ShortestPathTree computeTree(Intersection theStart, double theThreshold, EnvironmentSimulator theSim,
+                                       double theTimeLimit) {
+        int start = CompactGraph.toNode(theStart.getID());
+        int count = settleWithin(start, theThreshold, theSim.getCompiledConditions(), theTimeLimit);
+        return new ShortestPathTree(myIntersections, start, myState, mySettled, count);
+    }
+
+    /**
+     * Isochrone query: every location that can be reached from theStart within theBudget minutes without going over
+     * theThreshold, theStart included if it's a location. The search stops as soon as the next intersection is
+     * over the budget, so it only explores the part of the map the answer comes from.
+     * @return the locations from the closest to the farthest
+     */
+    public Intersection[] reachableLocations(Intersection theStart, double theThreshold, EnvironmentSimulator theSim,
+                                             double theBudget) {
+        int count = settleWithin(CompactGraph.toNode(theStart.getID()), theThreshold, theSim.getCompiledConditions(),
+                theBudget);
+        int locations = 0;
+        for (int i = 0; i < count; i++) {
+            if (myGraph.isLocation(mySettled[i])) {
+                locations++;
+            }
         }
-        if (num1 > num2) {
-            return 1;
+        Intersection[] result = new Intersection[locations];
+        locations = 0;
+        for (int i = 0; i < count; i++) {
+            if (myGraph.isLocation(mySettled[i])) {
+                result[locations++] = myIntersections[mySettled[i]];
+            }
         }
-        return -1;
+        return result;
     }
 
-    private double pathWeight(ComparableIntersection thePrevNode, double theRoadTime) {
-        return thePrevNode.getPathWeight() + theRoadTime;
+    /**
+     * Up to theCount meaningfully different routes from theStart to theEnd, the fastest first, by the plateau
+     * method. One search runs from each end, both bounded by theMaxStretch times the fastest time, and a plateau is
+     * a chain of roads the two search trees agree on. The route through each plateau, longest plateau first, is
+     * taken if it has no loop, is at most theMaxStretch times as slow as the fastest route, and shares at most
+     * theMaxOverlap of its time with every route taken before it. That's two bounded searches however many routes
+     * are asked for.
+     * @return fewer than theCount routes if there aren't that many different enough, none if there's no route
+     */
+    public Route[] computeAlternatives(Intersection theStart, Intersection theEnd, double theThreshold,
+                                       EnvironmentSimulator theSim, int theCount, double theMaxOverlap,
+                                       double theMaxStretch) {
+        if (myAlternatives == null) {
+            myAlternatives = new PlateauAlternatives(this, myGraph);
+        }
+        Route[] result = myAlternatives.compute(CompactGraph.toNode(theStart.getID()),
+                CompactGraph.toNode(theEnd.getID()), theThreshold, theSim.getCompiledConditions(), theCount,
+                theMaxOverlap, theMaxStretch);
+        mySettledCount = myAlternatives.getSettledCount();
+        return result;
     }
 
+    // Dijkstra from theStart until the queue is empty or past theTimeLimit, recording the settled nodes in
+    // mySettled. intersections over the threshold are never queued, so they're never reached
+    int settleWithin(int theStart, double theThreshold, CompiledConditions theConditions, double theTimeLimit) {
+        mySettledCount = settle(myState, getSettledOrder(), theStart, SearchState.NO_NODE, 0, theThreshold,
+                theConditions, theTimeLimit);
+        return mySettledCount;
+    }
 
-    private double pathWeight(ComparableIntersection thePrevNode, Road theRoad, EnvironmentSimulator theSim) {
-        return thePrevNode.getPathWeight() + SafetyChecker.roadTime(theRoad, theSim);
+    // the search of settleWithin on any state. once theTarget is settled, the limit drops to theStretch times its time
+    int settle(SearchState theState, int[] theOrder, int theStart, int theTarget, double theStretch,
+               double theThreshold, CompiledConditions theConditions, double theTimeLimit) {
+        IndexedHeap pq = theState.getHeap();
+        theState.reset();
+        if (compareDouble(theConditions.getIntersectionRisk(theStart), theThreshold) == 1) {
+            return 0;
+        }
+        theState.setWeight(theStart, 0, SearchState.NO_NODE);
+        pq.push(theStart, 0);
+
+        int count = 0;
+        double limit = theTimeLimit;
+        while (!pq.isEmpty() && pq.peekKey() <= limit) {
+            int current = pq.pop();
+            theState.close(current);
+            theOrder[count++] = current;
+            double currentWeight = theState.getWeight(current);
+            if (current == theTarget) {
+                limit = Math.min(limit, currentWeight * theStretch);
+            }
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                if (theState.isClosed(next)) {
+                    continue;
+                }
+                int road = myGraph.getRoad(e);
+                if (compareDouble(theConditions.getRoadRisk(road), theThreshold) == 1
+                        || compareDouble(theConditions.getIntersectionRisk(next), theThreshold) == 1) {
+                    continue;
+                }
+                double pathTotal = currentWeight + theConditions.getRoadTime(road);
+                if (!theState.isSeen(next) || compareDouble(pathTotal, theState.getWeight(next)) == -1) {
+                    theState.setWeight(next, pathTotal, current);
+                    pq.push(next, pathTotal);
+                }
+            }
+        }
+        return count;
     }
 
-    private void putNode(double theWeight, Intersection theNode, ComparableIntersection thePrevNode,
-                         PriorityQueue<ComparableIntersection> theQueue,
-                         HashMap<Intersection, ComparableIntersection> theIntersectionList) {
-        ComparableIntersection newNode = new ComparableIntersection(theNode, theWeight, thePrevNode);
-        theIntersectionList.put(theNode, newNode);
-        theQueue.add(newNode);
+    // the state and settle order left by the last settleWithin, for TravelMatrix and PlateauAlternatives
+    SearchState getState() {
+        return myState;
     }
 
-    private Intersection getNonOriginNode(Road theRoad, Intersection theOrigin) {
-        if (!theRoad.getSource().equals(theOrigin)) {
-            return theRoad.getSource();
+    int[] getSettledOrder() {
+        if (mySettled == null) {
+            mySettled = new int[myGraph.getIntersectionCount()];
         }
-        return theRoad.getDestination();
+        return mySettled;
     }
 
-    private void setPathWeight(double currentWeight, Intersection node, ComparableIntersection prevNode,
-                               PriorityQueue<ComparableIntersection> theQueue,
-                               HashMap<Intersection, ComparableIntersection> theIntersectionList) {
-        if (compareDouble(currentWeight,  theIntersectionList.get(node).myPathWeight) == -1) { // check if our path is more optimal
-            theQueue.remove(theIntersectionList.get(node));
-            theIntersectionList.get(node).setPathWeight(currentWeight); // edit this node with new path
-            theIntersectionList.get(node).setPrev(prevNode);
-            theQueue.add(theIntersectionList.get(node));
+    // the state bidirectional searches run backward from the target on
+    SearchState getBackwardState() {
+        if (myBackwardState == null) {
+            myBackwardState = new SearchState(myGraph.getIntersectionCount());
         }
+        return myBackwardState;
     }
 
-    private Route iterateIntersectionPath(ComparableIntersection theIntersection) {
-        ArrayList<Intersection> path = new ArrayList<>();
-        ComparableIntersection resultIterator = theIntersection;
-        while (resultIterator.getPrev() != null) {
-            path.addFirst(resultIterator.myIntersection);
-            resultIterator = resultIterator.getPrev();
-        }
-        path.addFirst(resultIterator.myIntersection);
-        return new Route(path.toArray(new Intersection[0]));
+    // number of intersections settled by the last search, to compare how much of the map each mode explores
+    public int getSettledCount() {
+        return mySettledCount;
     }
 
-    /**
-     * Specialized intersection to represent nodes so that we can store it in a queue for djikstras
-     */
-    private class ComparableIntersection implements Comparable<ComparableIntersection> {
-        private final Intersection myIntersection;
-        private double myPathWeight;
-        private ComparableIntersection myPrevNode;
+    // runs on default road times when theSim is null, otherwise on simulated times pruned by theThreshold.
+    // the heuristic is the larger of the geometric bound and the landmark bound, whichever of them are used
+    private Route search(Intersection theStart, Intersection theEnd, double theThreshold, EnvironmentSimulator theSim,
+                         boolean useHeuristic, Landmarks theLandmarks) {
+        mySettledCount = 0;
+        int start = CompactGraph.toNode(theStart.getID());
+        int target = CompactGraph.toNode(theEnd.getID());
+        CompiledConditions conditions = theSim == null ? null : theSim.getCompiledConditions();
+        if (conditions != null) {
+            if (compareDouble(conditions.getIntersectionRisk(start), theThreshold) == 1) {
+                return null;
+            } else if (compareDouble(conditions.getIntersectionRisk(target), theThreshold) == 1) {
+                return null;
+            }
+        }
+        double heuristicScale = useHeuristic ? myGraph.getTimePerMeterBound() : 0;
+        double[] targetDistances = null;
+        if (theLandmarks != null) {
+            targetDistances = new double[theLandmarks.getCount()];
+            theLandmarks.distancesOf(target, targetDistances);
+        }
+        SearchState state = myState;
+        IndexedHeap pq = state.getHeap();
+        state.reset();
 
-        public ComparableIntersection(Intersection theIntersection, double thePathWeight, ComparableIntersection thePrevNode) {
-            this.myIntersection = theIntersection;
-            this.myPathWeight = thePathWeight;
-            this.myPrevNode = thePrevNode;
+        state.setWeight(start, 0, SearchState.NO_NODE);
+        pq.push(start, heuristic(start, target, heuristicScale, theLandmarks, targetDistances));
+
+        while (!pq.isEmpty()) {
+            int current = pq.pop();
+            state.close(current);
+            mySettledCount++;
+            if (conditions != null && compareDouble(conditions.getIntersectionRisk(current), theThreshold) == 1) {
+                continue;
+            }
+            if (current == target) { // terminating case if we pop off the target
+                return toRoute(state.pathTo(target));
+            }
+            double currentWeight = state.getWeight(current);
+            // compute through the neighbors, calculating distance for unvisited neighbors
+            for (int e = myGraph.getEdgeStart(current); e < myGraph.getEdgeEnd(current); e++) {
+                int next = myGraph.getTarget(e);
+                if (state.isClosed(next)) { // if it's an already closed node, ignore
+                    continue;
+                }
+                int road = myGraph.getRoad(e);
+                double roadTime;
+                if (conditions == null) {
+                    roadTime = myGraph.getDefaultTime(road);
+                } else {
+                    if (compareDouble(conditions.getRoadRisk(road), theThreshold) == 1) { // skip if road is over the safety threshold
+                        continue;
+                    }
+                    roadTime = conditions.getRoadTime(road);
+                }
+                double pathTotal = currentWeight + roadTime;
+                // sets the weight of a never-seen node, or lowers it with a decrease-key if our path is more optimal
+                if (!state.isSeen(next) || compareDouble(pathTotal, state.getWeight(next)) == -1) {
+                    state.setWeight(next, pathTotal, current);
+                    pq.push(next, pathTotal + heuristic(next, target, heuristicScale, theLandmarks, targetDistances));
+                }
+            }
         }
+        return null;
+    }
 
-        public Intersection getIntersection() { return myIntersection;}
-        public double getPathWeight() {return myPathWeight;}
-        public ComparableIntersection getPrev() {return myPrevNode;}
-//        public void setIntersection(Map.Intersection theIntersection) {this.myIntersection = theIntersection;}
-        public void setPathWeight(double theNewWeight) {this.myPathWeight = theNewWeight;}
-        public void setPrev(ComparableIntersection theNewNode) {this.myPrevNode = theNewNode;}
+    private double heuristic(int theNode, int theTarget, double theScale, Landmarks theLandmarks, double[] theTargetDistances) {
+        double bound = theScale == 0 ? 0 : theScale * myGraph.distance(theNode, theTarget);
+        if (theLandmarks != null) {
+            bound = Math.max(bound, theLandmarks.lowerBound(theNode, theTargetDistances));
+        }
+        return bound;
+    }
 
-        @Override
-        public int compareTo(ComparableIntersection o) {
-            return compareDouble(myPathWeight, o.getPathWeight());
+    // returns 1 if num1 > num2, -1 if num1 < num2, and 0 if equal
+    static int compareDouble(double num1, double num2) {
+        if (Math.abs(num1 - num2) < DOUBLE_EPSILON) {
+            return 0;
+        }
+        if (num1 > num2) {
+            return 1;
         }
+        return -1;
     }
 
+    Route toRoute(int[] theNodePath) {
+        Intersection[] path = new Intersection[theNodePath.length];
+        for (int i = 0; i < theNodePath.length; i++) {
+            path[i] = myIntersections[theNodePath[i]];
+        }
+        return new Route(path);
+    }
 }
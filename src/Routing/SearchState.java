@@ -0,0 +1,85 @@
+package Routing;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-search arrays for Dijkstra style searches over a CompactGraph. Instead of clearing every array
+ * between searches, each node is stamped with the search epoch it was last touched in, so starting a new search
+ * costs O(1) apart from emptying the heap.
+ */
+final class SearchState {
+    static final int NO_NODE = -1;
+
+    private final double[] myWeights;
+    private final int[] myPrev;
+    private final int[] mySeen; // epoch the node was reached in
+    private final int[] myClosed; // epoch the node was settled in
+    private final IndexedHeap myHeap;
+    private int myEpoch;
+
+    SearchState(int theNodeCount) {
+        myWeights = new double[theNodeCount];
+        myPrev = new int[theNodeCount];
+        mySeen = new int[theNodeCount];
+        myClosed = new int[theNodeCount];
+        myHeap = new IndexedHeap(theNodeCount);
+    }
+
+    // starts a new search, forgetting every node reached by the previous one
+    void reset() {
+        myHeap.clear();
+        myEpoch++;
+        if (myEpoch == Integer.MAX_VALUE) { // stamps would wrap, so actually clear once
+            Arrays.fill(mySeen, 0);
+            Arrays.fill(myClosed, 0);
+            myEpoch = 1;
+        }
+    }
+
+    int size() {
+        return myWeights.length;
+    }
+
+    IndexedHeap getHeap() {
+        return myHeap;
+    }
+
+    boolean isSeen(int theNode) {
+        return mySeen[theNode] == myEpoch;
+    }
+
+    double getWeight(int theNode) {
+        return mySeen[theNode] == myEpoch ? myWeights[theNode] : Double.POSITIVE_INFINITY;
+    }
+
+    int getPrev(int theNode) {
+        return myPrev[theNode];
+    }
+
+    void setWeight(int theNode, double theWeight, int thePrev) {
+        mySeen[theNode] = myEpoch;
+        myWeights[theNode] = theWeight;
+        myPrev[theNode] = thePrev;
+    }
+
+    boolean isClosed(int theNode) {
+        return myClosed[theNode] == myEpoch;
+    }
+
+    void close(int theNode) {
+        myClosed[theNode] = myEpoch;
+    }
+
+    // node path from the search origin to theEnd
+    int[] pathTo(int theEnd) {
+        int length = 0;
+        for (int node = theEnd; node != NO_NODE; node = myPrev[node]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = theEnd; node != NO_NODE; node = myPrev[node]) {
+            path[--length] = node;
+        }
+        return path;
+    }
+}
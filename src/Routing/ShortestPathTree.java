@@ -0,0 +1,76 @@
+package Routing;
+
+import Map.*;
+
+import java.util.Arrays;
+
+/**
+ * Fastest routes from one intersection to every intersection a one-to-all search reached, as a parent and a time
+ * array indexed by node (ID - 1). Made by Router.computeTree, and independent of the Router afterwards.
+ */
+public final class ShortestPathTree {
+    private final Intersection[] myIntersections;
+    private final int mySource;
+    private final int[] myParents; // SearchState.NO_NODE for the source and for what wasn't reached
+    private final double[] myTimes; // minutes from the source, infinite if not reached
+    private final int myReachedCount;
+
+    ShortestPathTree(Intersection[] theIntersections, int theSource, SearchState theState, int[] theSettled,
+                     int theSettledCount) {
+        myIntersections = theIntersections;
+        mySource = theSource;
+        myParents = new int[theIntersections.length];
+        myTimes = new double[theIntersections.length];
+        Arrays.fill(myParents, SearchState.NO_NODE);
+        Arrays.fill(myTimes, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < theSettledCount; i++) {
+            int node = theSettled[i];
+            myParents[node] = theState.getPrev(node);
+            myTimes[node] = theState.getWeight(node);
+        }
+        myReachedCount = theSettledCount;
+    }
+
+    public Intersection getSource() {
+        return myIntersections[mySource];
+    }
+
+    public boolean isReachable(Intersection theIntersection) {
+        return myTimes[CompactGraph.toNode(theIntersection.getID())] != Double.POSITIVE_INFINITY;
+    }
+
+    // minutes of the fastest route from the source, infinite if it wasn't reached
+    public double getTime(Intersection theIntersection) {
+        return myTimes[CompactGraph.toNode(theIntersection.getID())];
+    }
+
+    // the intersection before theIntersection on its fastest route, null for the source and what wasn't reached
+    public Intersection getParent(Intersection theIntersection) {
+        int parent = myParents[CompactGraph.toNode(theIntersection.getID())];
+        return parent == SearchState.NO_NODE ? null : myIntersections[parent];
+    }
+
+    // number of intersections reached, the source included
+    public int getReachedCount() {
+        return myReachedCount;
+    }
+
+    /**
+     * @return the fastest route from the source to theEnd, null if it wasn't reached
+     */
+    public Route routeTo(Intersection theEnd) {
+        int end = CompactGraph.toNode(theEnd.getID());
+        if (myTimes[end] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int length = 0;
+        for (int node = end; node != SearchState.NO_NODE; node = myParents[node]) {
+            length++;
+        }
+        Intersection[] path = new Intersection[length];
+        for (int node = end; node != SearchState.NO_NODE; node = myParents[node]) {
+            path[--length] = myIntersections[node];
+        }
+        return new Route(path);
+    }
+}
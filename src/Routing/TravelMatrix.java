@@ -0,0 +1,362 @@
+package Routing;
+
+import Map.*;
+import Simulation.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Travel times and risks of the fastest routes between every pair of locations of a map, under one simulation and
+ * safety threshold. It's filled by one one-to-all search per location, run in parallel, instead of a search per
+ * pair. Both matrices are dense and row major, row = from, column = to, in location ID order. A pair with no route
+ * under the threshold has an infinite time and risk. The risk of a route is SafetyChecker.routeSafety of it.
+ *
+ * A matrix can be written to a binary file and read back without searching again. The file records fingerprints
+ * of the map and of the simulated conditions, so reading it for another map or simulation fails instead of
+ * returning stale numbers:
+ *
+ * header (48 bytes): magic "TMAT", version, location count, reserved int, map fingerprint, conditions fingerprint,
+ *                    threshold as longs/double, reserved long
+ * location IDs int[locations], times double[locations^2], risks double[locations^2], all little endian
+ */
+public final class TravelMatrix {
+    private static final int MAGIC = 0x54414D54; // "TMAT" read as a little endian int
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+    private static final int SOURCES_PER_THREAD = 4;
+    private static final int IO_BUFFER_BYTES = 1 << 20; // the file is read and written a buffer at a time
+    private static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+
+    private final Intersection[] myLocations;
+    private final int[] myLocationIDs; // ascending, for finding a location's index
+    private final double myThreshold;
+    private final long myMapFingerprint;
+    private final long myConditionsFingerprint;
+    private final double[] myTimes;
+    private final double[] myRisks;
+
+    private TravelMatrix(Intersection[] theLocations, double theThreshold, long theMapFingerprint,
+                         long theConditionsFingerprint, double[] theTimes, double[] theRisks) {
+        myLocations = theLocations;
+        myLocationIDs = new int[theLocations.length];
+        for (int i = 0; i < theLocations.length; i++) {
+            myLocationIDs[i] = theLocations[i].getID();
+        }
+        myThreshold = theThreshold;
+        myMapFingerprint = theMapFingerprint;
+        myConditionsFingerprint = theConditionsFingerprint;
+        myTimes = theTimes;
+        myRisks = theRisks;
+    }
+
+    public static TravelMatrix compute(CityMap theMap, EnvironmentSimulator theSim, double theThreshold) {
+        return compute(theMap, theSim, theThreshold, ForkJoinPool.commonPool());
+    }
+
+    // computes the matrix with the searches spread over thePool, every task with a Router of its own
+    public static TravelMatrix compute(CityMap theMap, EnvironmentSimulator theSim, double theThreshold,
+                                       ForkJoinPool thePool) {
+        if (!theSim.compareMap(theMap)) {
+            throw new IllegalArgumentException("the simulation isn't of this map");
+        }
+        CompactGraph graph = theMap.getCompactGraph();
+        CompiledConditions conditions = theSim.getCompiledConditions();
+        Intersection[] locations = locationsOf(theMap);
+        int count = locations.length;
+        double[] times = new double[entryCount(count)];
+        double[] risks = new double[entryCount(count)];
+
+        ParallelSlices.run(thePool, count, SOURCES_PER_THREAD, (from, to) -> {
+            Router router = new Router(theMap);
+            double[] routeRisks = new double[graph.getIntersectionCount()];
+            for (int row = from; row < to; row++) {
+                fillRow(router, graph, conditions, theThreshold, locations, row, routeRisks, times, risks);
+            }
+        });
+        return new TravelMatrix(locations, theThreshold, fingerprint(graph), fingerprint(conditions), times, risks);
+    }
+
+    // one search from location theRow, with the risk of every route worked out from its parent's in settle order
+    private static void fillRow(Router theRouter, CompactGraph theGraph, CompiledConditions theConditions,
+                                double theThreshold, Intersection[] theLocations, int theRow, double[] theRouteRisks,
+                                double[] theTimes, double[] theRisks) {
+        int start = CompactGraph.toNode(theLocations[theRow].getID());
+        int settled = theRouter.settleWithin(start, theThreshold, theConditions, Double.POSITIVE_INFINITY);
+        SearchState state = theRouter.getState();
+        int[] order = theRouter.getSettledOrder();
+        for (int i = 0; i < settled; i++) {
+            int node = order[i];
+            int prev = state.getPrev(node);
+            double risk = theConditions.getIntersectionRisk(node);
+            if (prev != SearchState.NO_NODE) {
+                // the road SafetyChecker.routeSafety takes between the two, the first one in the adjacency
+                int road = theGraph.getRoad(theGraph.findEdge(prev, node));
+                risk = Math.max(theRouteRisks[prev], Math.max(theConditions.getRoadRisk(road), risk));
+            }
+            theRouteRisks[node] = risk;
+        }
+        int base = theRow * theLocations.length;
+        for (int column = 0; column < theLocations.length; column++) {
+            int node = CompactGraph.toNode(theLocations[column].getID());
+            boolean reached = state.isClosed(node);
+            theTimes[base + column] = reached ? state.getWeight(node) : UNREACHABLE;
+            theRisks[base + column] = reached ? theRouteRisks[node] : UNREACHABLE;
+        }
+    }
+
+    /**
+     * Reads a matrix written by write, checking it was computed for theMap, the conditions of theSim and
+     * theThreshold.
+     * @throws IOException if the file can't be read, isn't a matrix, or belongs to another map, simulation or threshold
+     */
+    public static TravelMatrix read(Path thePath, CityMap theMap, EnvironmentSimulator theSim, double theThreshold)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(thePath + " is too short to be a travel matrix");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readMore(channel, buffer, HEADER_BYTES, thePath);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(thePath + " is not a travel matrix");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(thePath + " has travel matrix version " + version + ", expected " + VERSION);
+            }
+            int count = buffer.getInt();
+            buffer.getInt();
+            long mapFingerprint = buffer.getLong();
+            long conditionsFingerprint = buffer.getLong();
+            double threshold = buffer.getDouble();
+            buffer.getLong();
+            if (mapFingerprint != fingerprint(theMap.getCompactGraph())) {
+                throw new IOException(thePath + " was computed for another map");
+            } else if (conditionsFingerprint != fingerprint(theSim.getCompiledConditions())) {
+                throw new IOException(thePath + " was computed for other conditions");
+            } else if (Double.compare(threshold, theThreshold) != 0) {
+                throw new IOException(thePath + " was computed for threshold " + threshold);
+            }
+
+            Intersection[] locations = locationsOf(theMap);
+            long expected = HEADER_BYTES + 4L * count + 16L * count * count;
+            if (count != locations.length || channel.size() < expected) {
+                throw new IOException(thePath + " is truncated, expected " + expected + " bytes");
+            }
+            for (Intersection location : locations) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    readMore(channel, buffer, Math.min(IO_BUFFER_BYTES, 4L * count), thePath);
+                }
+                if (buffer.getInt() != location.getID()) {
+                    throw new IOException(thePath + " has other locations than the map");
+                }
+            }
+            double[] times = new double[entryCount(count)];
+            double[] risks = new double[entryCount(count)];
+            readDoubles(channel, buffer, times, thePath);
+            readDoubles(channel, buffer, risks, thePath);
+            return new TravelMatrix(locations, threshold, mapFingerprint, conditionsFingerprint, times, risks);
+        }
+    }
+
+    /**
+     * Reads the matrix at thePath if it matches theMap, theSim and theThreshold, otherwise computes it and writes it
+     * there for next time.
+     */
+    public static TravelMatrix readOrCompute(Path thePath, CityMap theMap, EnvironmentSimulator theSim,
+                                             double theThreshold) throws IOException {
+        if (Files.exists(thePath)) {
+            try {
+                return read(thePath, theMap, theSim, theThreshold);
+            } catch (IOException e) {
+                // stale or damaged, compute it again below
+            }
+        }
+        TravelMatrix result = compute(theMap, theSim, theThreshold);
+        result.write(thePath);
+        return result;
+    }
+
+    public void write(Path thePath) throws IOException {
+        int count = myLocations.length;
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0)
+                    .putLong(myMapFingerprint).putLong(myConditionsFingerprint).putDouble(myThreshold).putLong(0);
+            for (int id : myLocationIDs) {
+                if (!buffer.hasRemaining()) {
+                    writeOut(channel, buffer);
+                }
+                buffer.putInt(id);
+            }
+            writeDoubles(channel, buffer, myTimes);
+            writeDoubles(channel, buffer, myRisks);
+            writeOut(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    // theCount squared, the entries of each matrix, as long as one array can hold them
+    private static int entryCount(int theCount) {
+        try {
+            return Math.multiplyExact(theCount, theCount);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(theCount + " locations are too many for a travel matrix, at most "
+                    + (int) Math.sqrt(Integer.MAX_VALUE) + " fit");
+        }
+    }
+
+    // puts theValues into theBuffer after what's already there, writing it out whenever it fills up
+    private static void writeDoubles(FileChannel theChannel, ByteBuffer theBuffer, double[] theValues)
+            throws IOException {
+        int i = 0;
+        while (i < theValues.length) {
+            if (theBuffer.remaining() < Double.BYTES) {
+                writeOut(theChannel, theBuffer);
+            }
+            int n = Math.min(theValues.length - i, theBuffer.remaining() / Double.BYTES);
+            theBuffer.asDoubleBuffer().put(theValues, i, n);
+            theBuffer.position(theBuffer.position() + n * Double.BYTES);
+            i += n;
+        }
+    }
+
+    // writes everything put in theBuffer so far and empties it
+    private static void writeOut(FileChannel theChannel, ByteBuffer theBuffer) throws IOException {
+        theBuffer.flip();
+        while (theBuffer.hasRemaining()) {
+            theChannel.write(theBuffer);
+        }
+        theBuffer.clear();
+    }
+
+    // fills theValues from what's left in theBuffer, then from the rest of the file a buffer at a time
+    private static void readDoubles(FileChannel theChannel, ByteBuffer theBuffer, double[] theValues, Path thePath)
+            throws IOException {
+        int i = 0;
+        while (i < theValues.length) {
+            if (theBuffer.remaining() < Double.BYTES) {
+                int kept = theBuffer.remaining(); // part of a double the last read ended in
+                theBuffer.compact();
+                readMore(theChannel, theBuffer, Math.min(theBuffer.remaining(),
+                        (long) Double.BYTES * (theValues.length - i) - kept), thePath);
+            }
+            int n = Math.min(theValues.length - i, theBuffer.remaining() / Double.BYTES);
+            theBuffer.asDoubleBuffer().get(theValues, i, n);
+            theBuffer.position(theBuffer.position() + n * Double.BYTES);
+            i += n;
+        }
+    }
+
+    // reads theBytes more of the file into theBuffer from its position, then flips it to be read from the start
+    private static void readMore(FileChannel theChannel, ByteBuffer theBuffer, long theBytes, Path thePath)
+            throws IOException {
+        theBuffer.limit(theBuffer.position() + (int) theBytes);
+        while (theBuffer.hasRemaining()) {
+            if (theChannel.read(theBuffer) < 0) {
+                throw new IOException(thePath + " ended early");
+            }
+        }
+        theBuffer.flip();
+    }
+
+    public Intersection[] getLocations() {
+        return myLocations.clone();
+    }
+
+    public int getLocationCount() {
+        return myLocations.length;
+    }
+
+    // index of theLocation in the rows and columns, -1 if it isn't a location of the map
+    public int indexOf(Intersection theLocation) {
+        int index = Arrays.binarySearch(myLocationIDs, theLocation.getID());
+        return index >= 0 && myLocations[index] == theLocation ? index : -1;
+    }
+
+    public double getThreshold() {
+        return myThreshold;
+    }
+
+    // minutes of the fastest route from location theFrom to location theTo, by index
+    public double getTime(int theFrom, int theTo) {
+        return myTimes[theFrom * myLocations.length + theTo];
+    }
+
+    public double getRisk(int theFrom, int theTo) {
+        return myRisks[theFrom * myLocations.length + theTo];
+    }
+
+    public double getTime(Intersection theFrom, Intersection theTo) {
+        return getTime(checkedIndex(theFrom), checkedIndex(theTo));
+    }
+
+    public double getRisk(Intersection theFrom, Intersection theTo) {
+        return getRisk(checkedIndex(theFrom), checkedIndex(theTo));
+    }
+
+    // copies of the whole matrices, row major
+    public double[] getTimes() {
+        return myTimes.clone();
+    }
+
+    public double[] getRisks() {
+        return myRisks.clone();
+    }
+
+    private int checkedIndex(Intersection theLocation) {
+        int index = indexOf(theLocation);
+        if (index < 0) {
+            throw new IllegalArgumentException("intersection " + theLocation.getID() + " isn't a location");
+        }
+        return index;
+    }
+
+    private static Intersection[] locationsOf(CityMap theMap) {
+        List<Intersection> result = new ArrayList<>();
+        for (Intersection i : theMap.getAllIntersections()) {
+            if (i.isLocation()) {
+                result.add(i);
+            }
+        }
+        return result.toArray(new Intersection[0]);
+    }
+
+    // hashes of everything a matrix depends on, to tell whether a file still matches
+    private static long fingerprint(CompactGraph theGraph) {
+        long hash = Hashing.mix(theGraph.getIntersectionCount(), theGraph.getRoadCount());
+        for (int n = 0; n < theGraph.getIntersectionCount(); n++) {
+            hash = Hashing.mix(hash, theGraph.isLocation(n) ? 1 : 0);
+        }
+        for (int r = 0; r < theGraph.getRoadCount(); r++) {
+            hash = Hashing.mix(hash, theGraph.getSource(r));
+            hash = Hashing.mix(hash, theGraph.getDestination(r));
+            hash = Hashing.mix(hash, Double.doubleToLongBits(theGraph.getDefaultTime(r)));
+        }
+        return hash;
+    }
+
+    private static long fingerprint(CompiledConditions theConditions) {
+        long hash = Hashing.mix(theConditions.getIntersectionCount(), theConditions.getRoadCount());
+        for (int n = 0; n < theConditions.getIntersectionCount(); n++) {
+            hash = Hashing.mix(hash, Double.doubleToLongBits(theConditions.getIntersectionRisk(n)));
+        }
+        for (int r = 0; r < theConditions.getRoadCount(); r++) {
+            hash = Hashing.mix(hash, Double.doubleToLongBits(theConditions.getRoadTime(r)));
+            hash = Hashing.mix(hash, Double.doubleToLongBits(theConditions.getRoadRisk(r)));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,88 @@
+package Simulation;
+
+import Map.*;
+
+/**
+ * Dense per-simulation tables of what SafetyChecker computes, indexed by road id and by intersection node
+ * (ID - 1). Looking a road up here replaces two HashMap lookups and a Math.exp per relaxation, and the
+ * numbers are bit for bit the ones SafetyChecker returns.
+ */
+public final class CompiledConditions {
+    private final double[] myRoadTimes;
+    private final double[] myRoadRisks;
+    private final double[] myIntersectionRisks;
+
+    CompiledConditions(CityMap theMap, EnvironmentSimulator theSim) {
+        Intersection[] intersections = theMap.getAllIntersections();
+        Road[] roads = theMap.getAllRoads();
+
+        // gather the conditions into flat arrays first so the formulas below run as plain loops over primitives
+        double[] obstacles = new double[roads.length];
+        double[] weather = new double[roads.length];
+        double[] traffic = new double[roads.length];
+        double[] defaultTimes = new double[roads.length];
+        for (int r = 0; r < roads.length; r++) {
+            Conditions cond = theSim.getCondition(roads[r]);
+            obstacles[r] = cond.getObstacleSeverity();
+            weather[r] = cond.getWeatherFactor();
+            traffic[r] = cond.getTrafficDensity();
+            defaultTimes[r] = roads[r].getDefaultTime();
+        }
+        myRoadRisks = new double[roads.length];
+        myRoadTimes = new double[roads.length];
+        for (int r = 0; r < roads.length; r++) {
+            myRoadRisks[r] = SafetyChecker.risk(obstacles[r], weather[r], traffic[r]);
+        }
+        for (int r = 0; r < roads.length; r++) {
+            myRoadTimes[r] = defaultTimes[r] * SafetyChecker.timeFactor(obstacles[r], weather[r], traffic[r]);
+        }
+
+        myIntersectionRisks = new double[intersections.length];
+        for (int i = 0; i < intersections.length; i++) {
+            Conditions cond = theSim.getCondition(intersections[i]);
+            myIntersectionRisks[i] = SafetyChecker.risk(cond.getObstacleSeverity(), cond.getWeatherFactor(),
+                    cond.getTrafficDensity());
+        }
+    }
+
+    // theBase with the changed roads and intersection nodes of theSim compiled again, everything else copied over
+    CompiledConditions(CompiledConditions theBase, CityMap theMap, EnvironmentSimulator theSim, int[] theRoads,
+                       int[] theIntersections) {
+        Intersection[] intersections = theMap.getAllIntersections();
+        Road[] roads = theMap.getAllRoads();
+        myRoadTimes = theBase.myRoadTimes.clone();
+        myRoadRisks = theBase.myRoadRisks.clone();
+        myIntersectionRisks = theBase.myIntersectionRisks.clone();
+        for (int r : theRoads) {
+            Conditions cond = theSim.getCondition(roads[r]);
+            myRoadRisks[r] = SafetyChecker.risk(cond.getObstacleSeverity(), cond.getWeatherFactor(), cond.getTrafficDensity());
+            myRoadTimes[r] = roads[r].getDefaultTime() * SafetyChecker.timeFactor(cond.getObstacleSeverity(),
+                    cond.getWeatherFactor(), cond.getTrafficDensity());
+        }
+        for (int i : theIntersections) {
+            Conditions cond = theSim.getCondition(intersections[i]);
+            myIntersectionRisks[i] = SafetyChecker.risk(cond.getObstacleSeverity(), cond.getWeatherFactor(),
+                    cond.getTrafficDensity());
+        }
+    }
+
+    public double getRoadTime(int theRoad) {
+        return myRoadTimes[theRoad];
+    } // same as SafetyChecker.roadTime
+
+    public double getRoadRisk(int theRoad) {
+        return myRoadRisks[theRoad];
+    } // same as SafetyChecker.safetyRisk of the road
+
+    public double getIntersectionRisk(int theNode) {
+        return myIntersectionRisks[theNode];
+    } // same as SafetyChecker.safetyRisk of the intersection
+
+    public int getRoadCount() {
+        return myRoadTimes.length;
+    }
+
+    public int getIntersectionCount() {
+        return myIntersectionRisks.length;
+    }
+}
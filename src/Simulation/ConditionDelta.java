@@ -0,0 +1,78 @@
+package Simulation;
+
+import Map.*;
+
+import java.util.Arrays;
+
+/**
+ * A batch of condition changes on single roads and intersections, applied all at once with
+ * EnvironmentSimulator.apply. Changes are taken as given: setting an intersection's conditions doesn't touch the
+ * roads around it. If the same road or intersection is set twice, the last value wins.
+ */
+public final class ConditionDelta {
+    private Road[] myRoads = new Road[8];
+    private Conditions[] myRoadConditions = new Conditions[8];
+    private int myRoadCount;
+    private Intersection[] myIntersections = new Intersection[8];
+    private Conditions[] myIntersectionConditions = new Conditions[8];
+    private int myIntersectionCount;
+
+    public ConditionDelta setCondition(Road theRoad, Conditions theConditions) {
+        if (myRoadCount == myRoads.length) {
+            myRoads = Arrays.copyOf(myRoads, myRoadCount * 2);
+            myRoadConditions = Arrays.copyOf(myRoadConditions, myRoadCount * 2);
+        }
+        myRoads[myRoadCount] = theRoad;
+        myRoadConditions[myRoadCount] = theConditions;
+        myRoadCount++;
+        return this;
+    }
+
+    public ConditionDelta setCondition(Intersection theIntersection, Conditions theConditions) {
+        if (myIntersectionCount == myIntersections.length) {
+            myIntersections = Arrays.copyOf(myIntersections, myIntersectionCount * 2);
+            myIntersectionConditions = Arrays.copyOf(myIntersectionConditions, myIntersectionCount * 2);
+        }
+        myIntersections[myIntersectionCount] = theIntersection;
+        myIntersectionConditions[myIntersectionCount] = theConditions;
+        myIntersectionCount++;
+        return this;
+    }
+
+    /**
+     * Shorthand for a blocked road: its obstacle severity goes to 1, which raises its safety risk to at least 0.5.
+     * The road isn't closed outright, routers only leave it out under thresholds below its new risk.
+     */
+    public ConditionDelta blockRoad(Road theRoad, EnvironmentSimulator theSim) {
+        Conditions current = theSim.getCondition(theRoad);
+        return setCondition(theRoad, new Conditions(current.getWeatherFactor(), 1.0, current.getTrafficDensity()));
+    }
+
+    public boolean isEmpty() {
+        return myRoadCount == 0 && myIntersectionCount == 0;
+    }
+
+    int getRoadCount() {
+        return myRoadCount;
+    }
+
+    Road getRoad(int theIndex) {
+        return myRoads[theIndex];
+    }
+
+    Conditions getRoadCondition(int theIndex) {
+        return myRoadConditions[theIndex];
+    }
+
+    int getIntersectionCount() {
+        return myIntersectionCount;
+    }
+
+    Intersection getIntersection(int theIndex) {
+        return myIntersections[theIndex];
+    }
+
+    Conditions getIntersectionCondition(int theIndex) {
+        return myIntersectionConditions[theIndex];
+    }
+}
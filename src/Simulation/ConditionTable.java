@@ -0,0 +1,86 @@
+package Simulation;
+
+import java.util.Arrays;
+
+/**
+ * Persistent array of Conditions cut into chunks of 64. Changing a few entries copies the chunk index and only the
+ * chunks those entries are in, every other chunk is shared with the table it was made from, so the versions of a
+ * simulation cost little more than their changes and can be compared chunk by chunk.
+ */
+final class ConditionTable {
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Conditions[][] myChunks;
+    private final int mySize;
+
+    private ConditionTable(Conditions[][] theChunks, int theSize) {
+        this.myChunks = theChunks;
+        this.mySize = theSize;
+    }
+
+    static ConditionTable of(Conditions[] theValues) {
+        Conditions[][] chunks = new Conditions[(theValues.length + CHUNK_MASK) >> CHUNK_BITS][];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = Arrays.copyOfRange(theValues, c << CHUNK_BITS, Math.min(theValues.length, (c + 1) << CHUNK_BITS));
+        }
+        return new ConditionTable(chunks, theValues.length);
+    }
+
+    int size() {
+        return mySize;
+    }
+
+    Conditions get(int theIndex) {
+        return myChunks[theIndex >> CHUNK_BITS][theIndex & CHUNK_MASK];
+    }
+
+    // a new table with theValues[i] at theIndexes[i] for the first theCount of them, later ones win on repeats
+    ConditionTable with(int[] theIndexes, Conditions[] theValues, int theCount) {
+        Conditions[][] chunks = myChunks.clone();
+        boolean[] copied = new boolean[chunks.length];
+        for (int i = 0; i < theCount; i++) {
+            int chunk = theIndexes[i] >> CHUNK_BITS;
+            if (!copied[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+                copied[chunk] = true;
+            }
+            chunks[chunk][theIndexes[i] & CHUNK_MASK] = theValues[i];
+        }
+        return new ConditionTable(chunks, mySize);
+    }
+
+    // indexes whose conditions differ between two tables of the same size, in increasing order. shared chunks are
+    // skipped without looking at their entries
+    static int[] changed(ConditionTable theTable, ConditionTable theOther) {
+        if (theTable.mySize != theOther.mySize) {
+            throw new IllegalArgumentException("tables of different maps can't be compared");
+        }
+        int[] result = new int[16];
+        int count = 0;
+        for (int c = 0; c < theTable.myChunks.length; c++) {
+            Conditions[] chunk = theTable.myChunks[c];
+            Conditions[] other = theOther.myChunks[c];
+            if (chunk == other) {
+                continue;
+            }
+            for (int i = 0; i < chunk.length; i++) {
+                if (!sameValues(chunk[i], other[i])) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = (c << CHUNK_BITS) + i;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean sameValues(Conditions theCondition, Conditions theOther) {
+        return theCondition == theOther
+                || (theCondition.getWeatherFactor() == theOther.getWeatherFactor()
+                && theCondition.getObstacleSeverity() == theOther.getObstacleSeverity()
+                && theCondition.getTrafficDensity() == theOther.getTrafficDensity());
+    }
+}
@@ -1,12 +1,28 @@
 package Simulation;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
 import Map.*;
 
+/**
+ * Weather, traffic and obstacle conditions on every road and intersection of a map, simulated from a seed. A
+ * simulator never changes once built: apply makes a new version with some conditions changed, sharing everything
+ * else with this one, and changedRoads tells which roads differ between two versions.
+ */
 public class EnvironmentSimulator {
     private final CityMap myMap;
-    private final HashMap<Intersection, Conditions> myIntersections = new HashMap<>();
-    private final HashMap<Road,Conditions> myRoads = new HashMap<>();
+    private final Intersection[] myIntersectionList;
+    private final Road[] myRoadList;
+    private final ConditionTable myIntersections; // by node, ID - 1
+    private final ConditionTable myRoads; // by road id
+    private volatile CompiledConditions myCompiled;
+    // set by apply when the previous version was already compiled, so compiling only redoes the changed entries.
+    // one volatile reference, so another thread sees the whole patch or none of it and then compiles from scratch
+    private volatile CompiledPatch myPatch;
+    private static final AtomicLong NEXT_VERSION = new AtomicLong();
+    private final long myVersion = NEXT_VERSION.incrementAndGet();
     private static final Conditions defaultCondition = new Conditions(0, 0, 0);
     private static final double LIGHT_BLOCKAGE = 0.333;
     private static final double LIGHT_WEATHER = 0.333;
@@ -17,112 +33,240 @@ public class EnvironmentSimulator {
     private static final double MAX_WEATHER_COVERAGE = 0.6;
     private static final double MAX_TRAFFIC_COVERAGE = 0.6;
     private static final double SEVERITY_BOUND = 0.7;
+    private static final double UNSET = -1; // factor of an intersection no zone has reached yet
+    private static final int MAX_EMPTY_ZONES = 1000; // zones in a row that cover nothing before a field gives up
 
     public EnvironmentSimulator(CityMap theMap, long theRNGSeed) {
         this.myMap = theMap;
-        simulateConditions(theRNGSeed);
+        this.myIntersectionList = theMap.getAllIntersections();
+        this.myRoadList = theMap.getAllRoads();
+        Conditions[] intersections = new Conditions[myIntersectionList.length];
+        Conditions[] roads = new Conditions[myRoadList.length];
+        simulateConditions(theRNGSeed, intersections, roads);
+        this.myIntersections = ConditionTable.of(intersections);
+        this.myRoads = ConditionTable.of(roads);
+    }
+
+    // a new version of theBase with other condition tables, thePatch is null if theBase wasn't compiled
+    private EnvironmentSimulator(EnvironmentSimulator theBase, ConditionTable theIntersections, ConditionTable theRoads,
+                                 CompiledPatch thePatch) {
+        this.myMap = theBase.myMap;
+        this.myIntersectionList = theBase.myIntersectionList;
+        this.myRoadList = theBase.myRoadList;
+        this.myIntersections = theIntersections;
+        this.myRoads = theRoads;
+        this.myPatch = thePatch;
     }
 
     public Conditions getCondition(Intersection theIntersection) {
-        if (myIntersections.containsKey(theIntersection)) {
-            return myIntersections.get(theIntersection);
+        int node = theIntersection.getID() - 1;
+        if (node >= 0 && node < myIntersectionList.length && myIntersectionList[node] == theIntersection) {
+            return myIntersections.get(node);
         }
         return defaultCondition;
     }
 
     public Conditions getCondition(Road theRoad) {
-        if (myRoads.containsKey(theRoad)) {
-            return myRoads.get(theRoad);
+        int id = theRoad.getID();
+        if (id >= 0 && id < myRoadList.length && myRoadList[id] == theRoad) {
+            return myRoads.get(id);
         }
         return defaultCondition;
     }
 
+    /**
+     * Makes a new version of this simulation with theDelta's changes, leaving this one as it is. Only the chunks of
+     * the condition tables that hold a change are copied, and if this version's CompiledConditions were built, the
+     * new version's are patched from them instead of compiled from scratch.
+     * @throws IllegalArgumentException if theDelta changes a road or intersection that isn't on this map
+     */
+    public EnvironmentSimulator apply(ConditionDelta theDelta) {
+        int[] roads = new int[theDelta.getRoadCount()];
+        Conditions[] roadConditions = new Conditions[roads.length];
+        for (int i = 0; i < roads.length; i++) {
+            Road r = theDelta.getRoad(i);
+            if (r.getID() < 0 || r.getID() >= myRoadList.length || myRoadList[r.getID()] != r) {
+                throw new IllegalArgumentException("road " + r.getSource().getID() + "-" + r.getDestination().getID()
+                        + " isn't on this simulation's map");
+            }
+            roads[i] = r.getID();
+            roadConditions[i] = theDelta.getRoadCondition(i);
+        }
+        int[] intersections = new int[theDelta.getIntersectionCount()];
+        Conditions[] intersectionConditions = new Conditions[intersections.length];
+        for (int i = 0; i < intersections.length; i++) {
+            Intersection inter = theDelta.getIntersection(i);
+            int node = inter.getID() - 1;
+            if (node < 0 || node >= myIntersectionList.length || myIntersectionList[node] != inter) {
+                throw new IllegalArgumentException("intersection " + inter.getID() + " isn't on this simulation's map");
+            }
+            intersections[i] = node;
+            intersectionConditions[i] = theDelta.getIntersectionCondition(i);
+        }
+
+        CompiledConditions compiled = myCompiled;
+        return new EnvironmentSimulator(this,
+                myIntersections.with(intersections, intersectionConditions, intersections.length),
+                myRoads.with(roads, roadConditions, roads.length),
+                compiled == null ? null : new CompiledPatch(compiled, roads, intersections));
+    }
+
+    /**
+     * Road ids whose conditions differ between this simulation and theOther, in increasing order. Versions made
+     * from each other with apply share most of their tables, which are skipped without being compared.
+     * @throws IllegalArgumentException if theOther simulates a different map
+     */
+    public int[] changedRoads(EnvironmentSimulator theOther) {
+        checkSameMap(theOther);
+        return ConditionTable.changed(myRoads, theOther.myRoads);
+    }
+
+    // same as changedRoads, for intersection nodes (ID - 1)
+    public int[] changedIntersections(EnvironmentSimulator theOther) {
+        checkSameMap(theOther);
+        return ConditionTable.changed(myIntersections, theOther.myIntersections);
+    }
+
+    private void checkSameMap(EnvironmentSimulator theOther) {
+        if (theOther.myMap != myMap) {
+            throw new IllegalArgumentException("simulations of different maps can't be compared");
+        }
+    }
+
+    // unique among the simulators of this JVM, so results computed on one simulator can be told apart from another's
+    public long getVersion() {
+        return myVersion;
+    }
+
+    /**
+     * Road times and risks of this simulation compiled into dense tables for the routers. Built on first use.
+     */
+    public CompiledConditions getCompiledConditions() {
+        CompiledConditions result = myCompiled;
+        if (result == null) {
+            synchronized (this) {
+                result = myCompiled;
+                if (result == null) {
+                    CompiledPatch patch = myPatch;
+                    if (patch != null) {
+                        result = new CompiledConditions(patch.myBase, myMap, this, patch.myRoads, patch.myIntersections);
+                        myPatch = null; // let the old tables go
+                    } else {
+                        result = new CompiledConditions(myMap, this);
+                    }
+                    myCompiled = result;
+                }
+            }
+        }
+        return result;
+    }
+
     // checks if map is the same as the one this is initialized under
     public boolean compareMap(CityMap theOther) {
         return theOther.equals(myMap);
     }
 
+    // copies of the conditions as maps, built on every call
     public HashMap<Intersection, Conditions> getIntersectionConditions() {
-        return myIntersections;
+        HashMap<Intersection, Conditions> result = new HashMap<>();
+        for (int i = 0; i < myIntersectionList.length; i++) {
+            result.put(myIntersectionList[i], myIntersections.get(i));
+        }
+        return result;
     }
 
     public HashMap<Road, Conditions> getRoadConditions() {
-        return myRoads;
+        HashMap<Road, Conditions> result = new HashMap<>();
+        for (int r = 0; r < myRoadList.length; r++) {
+            result.put(myRoadList[r], myRoads.get(r));
+        }
+        return result;
     }
 
     // principle of simulating: we randomly set the radius of effects (so if it's rainy in 1 edge, it should be
     // rainy for a few kilometers more)
 
-    private void applyCondition(Intersection inter1, double theWeather, double theBlockage, double theTraffic) {
+    private void applyCondition(Intersection inter1, double theWeather, double theBlockage, double theTraffic,
+                                Conditions[] theIntersections) {
         Conditions newCon = new Conditions(theWeather, theBlockage, theTraffic);
-        myIntersections.put(inter1, newCon);
+        theIntersections[inter1.getID() - 1] = newCon;
     }
 
-    private void applyCondition(Road road1, double theWeather, double theBlockage, double theTraffic) {
+    private void applyCondition(Road road1, double theWeather, double theBlockage, double theTraffic,
+                                Conditions[] theRoads) {
         Conditions newCon = new Conditions(theWeather, theBlockage, theTraffic);
-        myRoads.put(road1, newCon);
+        theRoads[road1.getID()] = newCon;
     }
 
 
-    private void simulateConditions(long theRNGSeed) {
-        HashMap<Intersection, Double> weatherFactors = new HashMap<>();
-        HashMap<Intersection, Double> blockageFactors = new HashMap<>();
-        HashMap<Intersection, Double> trafficFactors = new HashMap<>();
+    // the three condition fields are independent, so each one gets its own stream split off the seed in a fixed
+    // order and they're simulated at the same time. the same seed always gives the same conditions
+    private void simulateConditions(long theRNGSeed, Conditions[] theIntersections, Conditions[] theRoads) {
         double distance = totalMapDistance(); // we want at last 1/3 of the map to have fairly extreme
-        Random rand = new Random(theRNGSeed);
+        CompactGraph graph = myMap.getCompactGraph();
+        SplittableRandom rand = new SplittableRandom(theRNGSeed);
+        SplittableRandom weatherRand = rand.split();
+        SplittableRandom trafficRand = rand.split();
+        SplittableRandom blockageRand = rand.split();
 
         if (DEBUG_MODE) {
             System.out.println("Total Mileage of Map: " + distance);
-            System.out.println("Simulating Weather...");
+            System.out.println("Simulating weather, traffic and obstacles...");
         }
 
         // set the approximate distance we want to be affected by each condition, then run a simulation on the map for it
-
-        // set weather parameters
-        double distanceAffectedByWeather = distance * rand.nextDouble(MINIMUM_CONDITION_COVERAGE, MAX_WEATHER_COVERAGE);
-        simulateSingleCondition(rand, distanceAffectedByWeather, LIGHT_WEATHER, SEVERITY_BOUND, weatherFactors);
-        fillOutCondition(rand, weatherFactors, LIGHT_WEATHER);
+        ForkJoinTask<double[]> traffic = ForkJoinTask.adapt(() ->
+                simulateField(graph, trafficRand, distance, MAX_TRAFFIC_COVERAGE, LIGHT_TRAFFIC)).fork();
+        ForkJoinTask<double[]> blockage = ForkJoinTask.adapt(() ->
+                simulateField(graph, blockageRand, distance, MAX_BLOCKAGE_COVERAGE, LIGHT_BLOCKAGE)).fork();
+        double[] weatherFactors = simulateField(graph, weatherRand, distance, MAX_WEATHER_COVERAGE, LIGHT_WEATHER);
+        double[] trafficFactors = traffic.join();
+        double[] blockageFactors = blockage.join();
 
         if (DEBUG_MODE) {
             System.out.println("Printing Weather Simulation.Conditions for all locations and intersections:");
             printMap(weatherFactors);
-            System.out.println("Simulating traffic...");
-        }
-
-        // set traffic parameters
-        double distanceAffectedByTraffic = distance * rand.nextDouble(MINIMUM_CONDITION_COVERAGE, MAX_TRAFFIC_COVERAGE);
-        simulateSingleCondition(rand, distanceAffectedByTraffic, LIGHT_TRAFFIC, SEVERITY_BOUND, trafficFactors);
-        fillOutCondition(rand, trafficFactors, LIGHT_TRAFFIC);
-
-        if (DEBUG_MODE) {
             System.out.println("Printing Traffic Simulation.Conditions for all locations and intersections:");
             printMap(trafficFactors);
-            System.out.println("Simulating obstacles...");
-        }
-
-        double distanceAffectedByObstacles = distance * rand.nextDouble(MINIMUM_CONDITION_COVERAGE, MAX_BLOCKAGE_COVERAGE);
-        simulateSingleCondition(rand, distanceAffectedByObstacles, LIGHT_BLOCKAGE, SEVERITY_BOUND, blockageFactors);
-        fillOutCondition(rand, blockageFactors, LIGHT_BLOCKAGE);
-
-        if (DEBUG_MODE) {
             System.out.println("Printing Obstacle Simulation.Conditions for all locations and intersections:");
             printMap(blockageFactors);
             System.out.println("Simulation Completed!");
         }
 
-        setAllConditions(weatherFactors, blockageFactors, trafficFactors);
+        setAllConditions(graph, weatherFactors, blockageFactors, trafficFactors, theIntersections, theRoads);
+    }
+
+    // the factor of one condition for every intersection, by node
+    private double[] simulateField(CompactGraph theGraph, SplittableRandom theRand, double theMapDistance,
+                                   double theMaxCoverage, double theLightBound) {
+        double[] factors = new double[myIntersectionList.length];
+        Arrays.fill(factors, UNSET);
+        double distanceAffected = theMapDistance * theRand.nextDouble(MINIMUM_CONDITION_COVERAGE, theMaxCoverage);
+        simulateSingleCondition(theGraph, theRand, distanceAffected, theLightBound, SEVERITY_BOUND, factors);
+        fillOutCondition(theRand, factors, theLightBound);
+        return factors;
+    }
 
+    /**
+     * Simulates every seed of theSeeds on theMap at once, for seed sweeps. Each simulator is the same one
+     * new EnvironmentSimulator(theMap, seed) gives.
+     * @return the simulators in the order of theSeeds
+     */
+    public static EnvironmentSimulator[] simulateAll(CityMap theMap, long... theSeeds) {
+        return LongStream.of(theSeeds).parallel()
+                .mapToObj(seed -> new EnvironmentSimulator(theMap, seed))
+                .toArray(EnvironmentSimulator[]::new);
     }
 
-    private void printMap(HashMap<Intersection, Double> theConditionMap) {
+    private void printMap(double[] theConditionMap) {
         int counter = 0;
-        for (Intersection i: myMap.getAllIntersections()) {
+        for (Intersection i: myIntersectionList) {
             if ((counter % 3) == 0) {
                 System.out.println();
             } else {
                 System.out.print(" ");
             }
-            System.out.print("(" + i.getID() + ", " + ((double)Math.round(theConditionMap.get(i)*100)/100) + ")");
+            System.out.print("(" + i.getID() + ", " + ((double)Math.round(theConditionMap[i.getID() - 1]*100)/100) + ")");
             counter++;
         }
         System.out.println("\n");
@@ -130,31 +274,32 @@ public class EnvironmentSimulator {
 
     private double totalMapDistance() {
         double result = 0;
-        for (Road r: myMap.getAllRoads()) {
+        for (Road r: myRoadList) {
             result += r.getLength();
         }
         return result;
     }
 
-    private void setAllConditions(HashMap<Intersection, Double> theWeather, HashMap<Intersection, Double> theObstacles,
-                                  HashMap<Intersection, Double> theTraffic) {
-        for (Intersection i: myMap.getAllIntersections()) {
-            applyCondition(i, theWeather.get(i), theObstacles.get(i), theTraffic.get(i));
+    private void setAllConditions(CompactGraph theGraph, double[] theWeather, double[] theObstacles,
+                                  double[] theTraffic, Conditions[] theIntersections, Conditions[] theRoads) {
+        for (Intersection i: myIntersectionList) {
+            int node = i.getID() - 1;
+            applyCondition(i, theWeather[node], theObstacles[node], theTraffic[node], theIntersections);
         }
-        for (Road r: myMap.getAllRoads()) {
-            Intersection source = r.getSource();
-            Intersection dest = r.getDestination();
-            double weatherFactor = (theWeather.get(source) + theWeather.get(dest))/2;
-            double blockageFactor = (theObstacles.get(source) + theObstacles.get(dest))/2;
-            double trafficFactor = (theTraffic.get(source) + theTraffic.get(dest))/2;
-            applyCondition(r, weatherFactor, blockageFactor, trafficFactor);
+        for (Road r: myRoadList) {
+            int source = theGraph.getSource(r.getID());
+            int dest = theGraph.getDestination(r.getID());
+            double weatherFactor = (theWeather[source] + theWeather[dest])/2;
+            double blockageFactor = (theObstacles[source] + theObstacles[dest])/2;
+            double trafficFactor = (theTraffic[source] + theTraffic[dest])/2;
+            applyCondition(r, weatherFactor, blockageFactor, trafficFactor, theRoads);
         }
     }
 
     // simulate the weather by randomly choosing intersections to start simulating weather
     // then travel a random radius around that intersection (which could be estimated)
-    private void simulateSingleCondition(Random theRand, double theDistance, double theConditionOrigin,
-                                 double theConditionBound, HashMap<Intersection, Double> ConditionMap) {
+    private void simulateSingleCondition(CompactGraph theGraph, SplittableRandom theRand, double theDistance,
+                                         double theConditionOrigin, double theConditionBound, double[] theConditionMap) {
         /**
          * idea for process: select random intersection as the epicenter of a weather cluster and a random radius
          * then traverse around the radius until either the limit, which is theDistance, is reached, or we've traversed
@@ -163,21 +308,28 @@ public class EnvironmentSimulator {
          * add to the weather factor
          */
         double distanceTraversed = 0;
-        Intersection[] interList = myMap.getAllIntersections();
         int problemZonesCreated = 0;
+        int emptyZones = 0; // zones in a row that didn't cover a single road
+        double shortestRoad = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < theGraph.getRoadCount(); r++) {
+            shortestRoad = Math.min(shortestRoad, theGraph.getLength(r));
+        }
+        ConditionCluster cluster = new ConditionCluster(theGraph);
 
-        while (distanceTraversed < theDistance) {
+        // a zone can only cover whole roads, so once less than the shortest road is left no zone will ever add to it
+        while (theDistance - distanceTraversed >= shortestRoad && emptyZones < MAX_EMPTY_ZONES) {
             // set up the epicenter of the condition event, don't set the condition to be too close to 1, it can still get to 1 other ways
-            Intersection epicenter = interList[theRand.nextInt(0, interList.length)];
+            int epicenter = theRand.nextInt(0, myIntersectionList.length);
             double epiCondition = theRand.nextDouble(theConditionOrigin, theConditionBound); // mild to pretty severe weather at the center
             // we want to affect everything within this radius
             double radius = theRand.nextDouble(0, theDistance-(distanceTraversed));
 
-            double searchDistance = makeConditionCluster(radius, epicenter, epiCondition, ConditionMap);
+            double searchDistance = cluster.spread(radius, epicenter, epiCondition, theConditionMap);
             distanceTraversed += searchDistance;
+            emptyZones = searchDistance > 0 ? 0 : emptyZones + 1;
             problemZonesCreated++;
             if (DEBUG_MODE) {
-                System.out.println("Epicenter: " + epicenter.getID() + ", " + epiCondition);
+                System.out.println("Epicenter: " + (epicenter + 1) + ", " + epiCondition);
             }
         }
         if (DEBUG_MODE) {
@@ -186,94 +338,108 @@ public class EnvironmentSimulator {
         }
     }
 
-    private void fillOutCondition(Random theRand, HashMap<Intersection, Double> theMap, double theBound) {
-        for (Intersection i : myMap.getAllIntersections()) {
-            if (!theMap.containsKey(i)) {
-                theMap.put(i, theRand.nextDouble(theBound));
+    private void fillOutCondition(SplittableRandom theRand, double[] theMap, double theBound) {
+        for (int node = 0; node < theMap.length; node++) {
+            if (theMap[node] == UNSET) {
+                theMap[node] = theRand.nextDouble(theBound);
             }
         }
     }
 
-    private void addToCondition(Intersection inter1, double theAmount, HashMap<Intersection, Double> theMap) {
-        if (theMap.containsKey(inter1)) {
-            theMap.put(inter1, theMap.get(inter1) * (1 + theAmount));
-            if (theMap.get(inter1) >= 1) {
-                theMap.put(inter1, 1.0);
-            }
+    private static void addToCondition(int theNode, double theAmount, double[] theMap) {
+        if (theMap[theNode] != UNSET) {
+            theMap[theNode] = Math.min(1, theMap[theNode] * (1 + theAmount));
         } else {
-            theMap.put(inter1, theAmount);
+            theMap[theNode] = theAmount;
         }
     }
 
-    private double makeConditionCluster(double theRadius, Intersection theOrigin, double theOriginCondition,
-                                        HashMap<Intersection, Double> theConditionMap) {
-        // set up our bfs from the origin
-        Queue<Intersection> bfsQueue =  new LinkedList<>();
-        HashMap<Intersection, double[]> distances = new HashMap<>();
-        HashMap<Intersection, Intersection> visited = new HashMap<>(); // <inter1, theprevious>
-        double searchDistance = 0;
-        distances.put(theOrigin, new double[] {0, 0, 0, 0});
-        bfsQueue.add(theOrigin);
-        visited.put(theOrigin, null);
-
-        while (!bfsQueue.isEmpty() && searchDistance < theRadius) {
-            Intersection currEdge = bfsQueue.poll();
-            double totalDistance = distanceFromOrigin(distances.get(currEdge));
-            // the line of code below could lead to a negative number, so set it to the absolute value or 0
-            double decay  = 1.0 - distanceFromOrigin(distances.get(currEdge))/theRadius;
-            if (decay <= 0) {
-                continue;
-            }
-            addToCondition(currEdge, decay * theOriginCondition, theConditionMap);
-            if (visited.get(currEdge) != null) {
-                searchDistance += myMap.getRoad(currEdge, visited.get(currEdge)).getLength();
-            }
+    // the compiled tables of the version apply started from and the roads and intersection nodes it changed
+    private static final class CompiledPatch {
+        private final CompiledConditions myBase;
+        private final int[] myRoads;
+        private final int[] myIntersections;
 
-            if (withinDistance(totalDistance, theRadius)) {
-                // mark the visited nodes
-                for (Road r : currEdge.getRoadList()) { // get the intersections this is connected to
-                    Intersection nonOriginNode;
-                    if (!r.getSource().equals(currEdge)) { // get whichever intersection in the road isn't our current
-                        nonOriginNode = r.getSource();
-                    } else {
-                        nonOriginNode = r.getDestination();
-                    }
-                    visited.put(nonOriginNode, currEdge);
-                    distances.put(nonOriginNode, addCartesianDistances(currEdge, nonOriginNode, distances.get(currEdge)));
-                    bfsQueue.add(nonOriginNode);
-                }
-            } // if we're out of bounds, don't add the adjacent nodes
+        private CompiledPatch(CompiledConditions theBase, int[] theRoads, int[] theIntersections) {
+            myBase = theBase;
+            myRoads = theRoads;
+            myIntersections = theIntersections;
         }
-        return searchDistance;
     }
 
+    /**
+     * BFS that spreads one condition zone out from its epicenter, reused for every zone of a field. Its arrays are
+     * stamped with the zone they were written for, so starting a zone doesn't clear anything, and every intersection
+     * is queued at most once per zone. How far an intersection is from the epicenter is taken from the north-south
+     * and east-west distance driven along the BFS path to it.
+     */
+    private static final class ConditionCluster {
+        private final CompactGraph myGraph;
+        private final int[] myStamps;
+        private final double[] myNorth; // meters north of the epicenter, negative for south
+        private final double[] myEast; // meters east of the epicenter, negative for west
+        private final double[] myReachedBy; // length of the road the BFS reached the intersection through
+        private final int[] myQueue;
+        private int myZone;
+
+        private ConditionCluster(CompactGraph theGraph) {
+            int n = theGraph.getIntersectionCount();
+            myGraph = theGraph;
+            myStamps = new int[n];
+            myNorth = new double[n];
+            myEast = new double[n];
+            myReachedBy = new double[n];
+            myQueue = new int[n];
+        }
+
+        // adds the zone to theConditionMap and returns the length of road it covered
+        private double spread(double theRadius, int theOrigin, double theOriginCondition, double[] theConditionMap) {
+            myZone++;
+            int head = 0;
+            int tail = 0;
+            double searchDistance = 0;
+            reach(theOrigin, 0, 0, 0);
+            myQueue[tail++] = theOrigin;
+
+            while (head < tail && searchDistance < theRadius) {
+                int node = myQueue[head++];
+                double decay = 1.0 - Math.hypot(myNorth[node], myEast[node]) / theRadius;
+                if (decay <= 0) {
+                    continue; // if we're out of bounds, don't add the adjacent nodes
+                }
+                addToCondition(node, decay * theOriginCondition, theConditionMap);
+                searchDistance += myReachedBy[node];
 
-    // get the distance matrix [North, South, East, West] of an intersection using previous distance matrix
-    private double[] addCartesianDistances(Intersection theFrom, Intersection theTo, double[] distances) {
-        Road r = CityMap.getRoad(theFrom, theTo);
-        double[] result = distances.clone();
-        if (r != null) {
-            switch (r.getDirection(theFrom)) {
-                case NORTH: result[0] += r.getLength();
-                    break;
-                case SOUTH: result[1] += r.getLength();
-                    break;
-                case EAST: result[2] += r.getLength();
-                    break;
-                case WEST: result[3] += r.getLength();
-                    break;
+                for (int e = myGraph.getEdgeStart(node); e < myGraph.getEdgeEnd(node); e++) {
+                    int next = myGraph.getTarget(e);
+                    if (myStamps[next] == myZone) {
+                        continue;
+                    }
+                    double length = myGraph.getLength(myGraph.getRoad(e));
+                    double north = myNorth[node];
+                    double east = myEast[node];
+                    switch (myGraph.getDirection(e)) {
+                        case NORTH: north += length;
+                            break;
+                        case SOUTH: north -= length;
+                            break;
+                        case EAST: east += length;
+                            break;
+                        case WEST: east -= length;
+                            break;
+                    }
+                    reach(next, north, east, length);
+                    myQueue[tail++] = next;
+                }
             }
+            return searchDistance;
         }
-        return result;
-    }
 
-    private double distanceFromOrigin(double[] theDistances) {
-        double theX = Math.abs(theDistances[0] - theDistances[1]);
-        double theY = Math.abs(theDistances[2] - theDistances[3]);
-        return Math.sqrt((theX*theX) + (theY*theY));
-    }
-
-    private boolean withinDistance(double theDistance, double theRadius) {
-        return theDistance <= theRadius;
+        private void reach(int theNode, double theNorth, double theEast, double theRoadLength) {
+            myStamps[theNode] = myZone;
+            myNorth[theNode] = theNorth;
+            myEast[theNode] = theEast;
+            myReachedBy[theNode] = theRoadLength;
+        }
     }
 }
@@ -19,21 +19,30 @@ public class SafetyChecker {
 
     public static double safetyRisk(Intersection theIntersection, EnvironmentSimulator theSim) {
         Conditions cond = theSim.getCondition(theIntersection);
-        return cond.getObstacleSeverity() * OBSTACLE_SAFETY_WEIGHT + cond.getWeatherFactor() * WEATHER_SAFETY_WEIGHT
-                + cond.getTrafficDensity() * TRAFFIC_SAFETY_WEIGHT;
+        return risk(cond.getObstacleSeverity(), cond.getWeatherFactor(), cond.getTrafficDensity());
     }
 
     public static double safetyRisk(Road theRoad, EnvironmentSimulator theSim) {
         Conditions cond = theSim.getCondition(theRoad);
-        return cond.getObstacleSeverity() * OBSTACLE_SAFETY_WEIGHT + cond.getWeatherFactor() * WEATHER_SAFETY_WEIGHT
-                + cond.getTrafficDensity() * TRAFFIC_SAFETY_WEIGHT;
+        return risk(cond.getObstacleSeverity(), cond.getWeatherFactor(), cond.getTrafficDensity());
     }
 
     public static double roadTime(Road theRoad, EnvironmentSimulator theSim) {
         Conditions roadCon = theSim.getCondition(theRoad);
-        double trafficMultiplier = roadCon.getObstacleSeverity() * OBSTACLE_TIME_WEIGHT
-                + roadCon.getTrafficDensity() * TRAFFIC_TIME_WEIGHT + roadCon.getWeatherFactor() * WEATHER_TIME_WEIGHT;
-        return theRoad.getDefaultTime() * Math.exp(CONDITION_SCALAR * trafficMultiplier);
+        return theRoad.getDefaultTime() * timeFactor(roadCon.getObstacleSeverity(), roadCon.getWeatherFactor(),
+                roadCon.getTrafficDensity());
+    }
+
+    // the formulas on their own, so CompiledConditions gets the exact same numbers
+    static double risk(double theObstacle, double theWeather, double theTraffic) {
+        return theObstacle * OBSTACLE_SAFETY_WEIGHT + theWeather * WEATHER_SAFETY_WEIGHT
+                + theTraffic * TRAFFIC_SAFETY_WEIGHT;
+    }
+
+    static double timeFactor(double theObstacle, double theWeather, double theTraffic) {
+        double trafficMultiplier = theObstacle * OBSTACLE_TIME_WEIGHT
+                + theTraffic * TRAFFIC_TIME_WEIGHT + theWeather * WEATHER_TIME_WEIGHT;
+        return Math.exp(CONDITION_SCALAR * trafficMultiplier);
     }
 
     // maxRouteSafety
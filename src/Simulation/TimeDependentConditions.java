@@ -0,0 +1,136 @@
+package Simulation;
+
+import Map.*;
+
+/**
+ * Conditions that change over the day, made from simulations of the same map taken at increasing times (minutes).
+ * Every road gets a piecewise-linear travel time profile with a breakpoint at each snapshot time, interpolated in
+ * between and held flat before the first and after the last. The profiles of all roads share the breakpoints and
+ * sit in one flat array, road by road, so a map with k snapshots costs k doubles per road and intersection instead
+ * of k EnvironmentSimulators kept around.
+ *
+ * Profiles are FIFO: leaving a road later never gets you to its end earlier. Where a later snapshot's traffic
+ * clears faster than that allows, the earlier breakpoint is lowered to the time you'd get by waiting for the later
+ * one, which keeps time-dependent Dijkstra exact for travel times. Risks aren't FIFO, something under a threshold
+ * when you get there early can be over it a little later and back under after, so for pruning every road and
+ * intersection also has its peak risk over the day.
+ */
+public final class TimeDependentConditions {
+    private final CityMap myMap;
+    private final double[] myTimes; // breakpoints in minutes, strictly increasing
+    private final double[] myRoadTimes; // myRoadTimes[road * k + i] is the travel time when entering at myTimes[i]
+    private final double[] myRoadRisks;
+    private final double[] myIntersectionRisks; // by node * k + i
+    private final double[] myPeakRoadRisks; // by road, the highest risk of any snapshot
+    private final double[] myPeakIntersectionRisks; // by node
+
+    /**
+     * @param theTimes the time of every snapshot in minutes, strictly increasing
+     * @param theSnapshots the conditions at those times, all simulations of theMap
+     */
+    public TimeDependentConditions(CityMap theMap, double[] theTimes, EnvironmentSimulator[] theSnapshots) {
+        if (theTimes.length == 0 || theTimes.length != theSnapshots.length) {
+            throw new IllegalArgumentException("need one snapshot for every time, and at least one");
+        }
+        for (int i = 0; i < theTimes.length; i++) {
+            if (i > 0 && !(theTimes[i] > theTimes[i - 1])) {
+                throw new IllegalArgumentException("snapshot times must be strictly increasing");
+            }
+            if (!theSnapshots[i].compareMap(theMap)) {
+                throw new IllegalArgumentException("snapshot " + i + " isn't a simulation of this map");
+            }
+        }
+        int k = theTimes.length;
+        int roadCount = theMap.getCompactGraph().getRoadCount();
+        int nodeCount = theMap.getCompactGraph().getIntersectionCount();
+        myMap = theMap;
+        myTimes = theTimes.clone();
+        myRoadTimes = new double[roadCount * k];
+        myRoadRisks = new double[roadCount * k];
+        myIntersectionRisks = new double[nodeCount * k];
+        myPeakRoadRisks = new double[roadCount];
+        myPeakIntersectionRisks = new double[nodeCount];
+        for (int i = 0; i < k; i++) {
+            CompiledConditions conditions = theSnapshots[i].getCompiledConditions();
+            for (int r = 0; r < roadCount; r++) {
+                myRoadTimes[r * k + i] = conditions.getRoadTime(r);
+                myRoadRisks[r * k + i] = conditions.getRoadRisk(r);
+                myPeakRoadRisks[r] = Math.max(myPeakRoadRisks[r], conditions.getRoadRisk(r));
+            }
+            for (int n = 0; n < nodeCount; n++) {
+                myIntersectionRisks[n * k + i] = conditions.getIntersectionRisk(n);
+                myPeakIntersectionRisks[n] = Math.max(myPeakIntersectionRisks[n], conditions.getIntersectionRisk(n));
+            }
+        }
+
+        // enforce FIFO from the back, entering at myTimes[i] is never slower than waiting for myTimes[i + 1]
+        for (int r = 0; r < roadCount; r++) {
+            for (int i = k - 2; i >= 0; i--) {
+                double waited = myRoadTimes[r * k + i + 1] + (myTimes[i + 1] - myTimes[i]);
+                myRoadTimes[r * k + i] = Math.min(myRoadTimes[r * k + i], waited);
+            }
+        }
+    }
+
+    // minutes to drive theRoad when entering it at theTime
+    public double getRoadTime(int theRoad, double theTime) {
+        return interpolate(myRoadTimes, theRoad, theTime);
+    }
+
+    // when you get to the end of theRoad entering it at theTime, never earlier for a later theTime
+    public double getArrivalTime(int theRoad, double theTime) {
+        return theTime + getRoadTime(theRoad, theTime);
+    }
+
+    public double getRoadRisk(int theRoad, double theTime) {
+        return interpolate(myRoadRisks, theRoad, theTime);
+    }
+
+    public double getIntersectionRisk(int theNode, double theTime) {
+        return interpolate(myIntersectionRisks, theNode, theTime);
+    }
+
+    // the profiles are linear between snapshots, so no moment of the day is riskier than this
+    public double getPeakRoadRisk(int theRoad) {
+        return myPeakRoadRisks[theRoad];
+    }
+
+    public double getPeakIntersectionRisk(int theNode) {
+        return myPeakIntersectionRisks[theNode];
+    }
+
+    public int getSnapshotCount() {
+        return myTimes.length;
+    }
+
+    public double getSnapshotTime(int theSnapshot) {
+        return myTimes[theSnapshot];
+    }
+
+    public boolean compareMap(CityMap theMap) {
+        return theMap.equals(myMap);
+    }
+
+    private double interpolate(double[] theProfiles, int theIndex, double theTime) {
+        int k = myTimes.length;
+        int base = theIndex * k;
+        if (theTime <= myTimes[0]) {
+            return theProfiles[base];
+        } else if (theTime >= myTimes[k - 1]) {
+            return theProfiles[base + k - 1];
+        }
+        // the last breakpoint at or before theTime
+        int low = 0;
+        int high = k - 1;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (myTimes[mid] <= theTime) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        double fraction = (theTime - myTimes[low]) / (myTimes[high] - myTimes[low]);
+        return theProfiles[base + low] + fraction * (theProfiles[base + high] - theProfiles[base + low]);
+    }
+}